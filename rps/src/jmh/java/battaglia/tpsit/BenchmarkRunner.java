@@ -0,0 +1,51 @@
+package battaglia.tpsit;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Punto di ingresso dei benchmark JMH, usato come classe principale di {@code target/benchmarks.jar}.
+ * <p>
+ * Accetta le stesse opzioni di {@code org.openjdk.jmh.Main} (ad esempio un filtro sui nomi dei
+ * benchmark), ma attiva sempre il profiler delle allocazioni, disattiva i log dell'applicazione
+ * e salva i risultati in JSON in {@code target/jmh-result.json}, o nel file indicato con {@code -rff}.
+ */
+public final class BenchmarkRunner {
+    private static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * Esegue i benchmark selezionati.
+     *
+     * @param args Opzioni della riga di comando di JMH
+     * @throws Exception Se le opzioni non sono valide o l'esecuzione fallisce
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("-Dlogback.configurationFile=logback-bench.xml")
+                .resultFormat(ResultFormatType.JSON)
+                .result(commandLine.getResult().orElse(DEFAULT_RESULT_FILE))
+                .build();
+
+        Runner runner = new Runner(options);
+        if (commandLine.shouldList()) {
+            runner.list();
+            return;
+        }
+        runner.run();
+    }
+}
@@ -0,0 +1,68 @@
+package battaglia.tpsit.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark dei round trip di serializzazione: {@link Message} con il codec JSON e con quello binario,
+ * e {@link GameResult} in JSON. Ogni benchmark codifica e poi decodifica lo stesso oggetto,
+ * come avviene tra il server e il client.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    private final JsonLineCodec jsonCodec = new JsonLineCodec();
+    private final BinaryCodec binaryCodec = new BinaryCodec();
+    private Message move;
+    private Message gameStart;
+    private GameResult result;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Una mossa cifrata come quella inviata dal client, con il payload binario
+        move = Message.createMove(CryptoUtils.generateNonce());
+        gameStart = Message.createGameStart("avversario");
+        result = RoundOutcome.of(GameMoves.SPOCK, GameMoves.FORBICE).toResult("alice", "bob");
+    }
+
+    @Benchmark
+    public Message jsonMoveRoundTrip() throws IOException {
+        return jsonCodec.decode(ByteBuffer.wrap(jsonCodec.encode(move)));
+    }
+
+    @Benchmark
+    public Message jsonGameStartRoundTrip() throws IOException {
+        return jsonCodec.decode(ByteBuffer.wrap(jsonCodec.encode(gameStart)));
+    }
+
+    @Benchmark
+    public Message binaryMoveRoundTrip() throws IOException {
+        return binaryCodec.decode(ByteBuffer.wrap(binaryCodec.encode(move)));
+    }
+
+    @Benchmark
+    public Message binaryGameStartRoundTrip() throws IOException {
+        return binaryCodec.decode(ByteBuffer.wrap(binaryCodec.encode(gameStart)));
+    }
+
+    @Benchmark
+    public GameResult resultRoundTrip() throws IOException {
+        return JsonCodec.readResult(JsonCodec.writeResult(result));
+    }
+}
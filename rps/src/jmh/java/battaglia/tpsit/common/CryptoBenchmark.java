@@ -0,0 +1,211 @@
+package battaglia.tpsit.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark di tutti i metodi di {@link CryptoUtils}, dalla generazione delle chiavi RSA
+ * alla cifratura AES di una mossa, e del {@link CryptoContext} che li sostituisce sui messaggi di gioco.
+ * Gli input sono preparati una volta sola, così ogni benchmark misura solo l'operazione che lo nomina.
+ * I due benchmark dell'handshake misurano invece in handshake al secondo tutto il lavoro crittografico
+ * che il server svolge per un client con X25519 o con RSA.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+    private static final String MOVE = "LUCERTOLA";
+
+    private KeyPair rsaKeyPair;
+    private KeyPair x25519KeyPair;
+    private KeyPair x25519PeerKeyPair;
+    private SecretKey aesKey;
+    private String encodedRsaPublicKey;
+    private String encodedRsaPrivateKey;
+    private String encodedX25519PublicKey;
+    private String encodedX25519PeerPublicKey;
+    private String encodedAesKey;
+    private String wrappedAesKey;
+    private byte[] ticketSecret;
+    private byte[] clientNonce;
+    private byte[] serverNonce;
+    private String encryptedMoveBase64;
+    private byte[] moveBytes;
+    private byte[] encryptedMoveBytes;
+    private CryptoContext clientContext;
+    private CryptoContext serverContext;
+
+    @Setup
+    public void setUp() throws Exception {
+        rsaKeyPair = CryptoUtils.generateRSAKeyPair();
+        x25519KeyPair = CryptoUtils.generateX25519KeyPair();
+        x25519PeerKeyPair = CryptoUtils.generateX25519KeyPair();
+        aesKey = CryptoUtils.generateAESKey();
+        encodedRsaPublicKey = CryptoUtils.encodePublicKey(rsaKeyPair.getPublic());
+        encodedRsaPrivateKey = CryptoUtils.encodePrivateKey(rsaKeyPair.getPrivate());
+        encodedX25519PublicKey = CryptoUtils.encodePublicKey(x25519KeyPair.getPublic());
+        encodedX25519PeerPublicKey = CryptoUtils.encodePublicKey(x25519PeerKeyPair.getPublic());
+        encodedAesKey = CryptoUtils.encodeAESKey(aesKey);
+        wrappedAesKey = CryptoUtils.encryptAESKeyWithRSA(aesKey, rsaKeyPair.getPublic());
+        ticketSecret = CryptoUtils.generateNonce();
+        clientNonce = CryptoUtils.generateNonce();
+        serverNonce = CryptoUtils.generateNonce();
+        encryptedMoveBase64 = CryptoUtils.encryptWithAES(MOVE, aesKey);
+        moveBytes = MOVE.getBytes(StandardCharsets.UTF_8);
+        encryptedMoveBytes = CryptoUtils.encryptBytesWithAES(moveBytes, aesKey);
+        clientContext = CryptoContext.forClient(aesKey, true);
+        serverContext = CryptoContext.forServer(aesKey, true);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public KeyPair generateRSAKeyPair() throws Exception {
+        return CryptoUtils.generateRSAKeyPair();
+    }
+
+    @Benchmark
+    public KeyPair generateX25519KeyPair() throws Exception {
+        return CryptoUtils.generateX25519KeyPair();
+    }
+
+    @Benchmark
+    public SecretKey generateAESKey() throws Exception {
+        return CryptoUtils.generateAESKey();
+    }
+
+    @Benchmark
+    public String encodePublicKey() {
+        return CryptoUtils.encodePublicKey(rsaKeyPair.getPublic());
+    }
+
+    @Benchmark
+    public PublicKey decodePublicKey() throws Exception {
+        return CryptoUtils.decodePublicKey(encodedRsaPublicKey);
+    }
+
+    @Benchmark
+    public PublicKey decodeX25519PublicKey() throws Exception {
+        return CryptoUtils.decodeX25519PublicKey(encodedX25519PublicKey);
+    }
+
+    @Benchmark
+    public String encodePrivateKey() {
+        return CryptoUtils.encodePrivateKey(rsaKeyPair.getPrivate());
+    }
+
+    @Benchmark
+    public PrivateKey decodePrivateKey() throws Exception {
+        return CryptoUtils.decodePrivateKey(encodedRsaPrivateKey);
+    }
+
+    @Benchmark
+    public String encodeAESKey() {
+        return CryptoUtils.encodeAESKey(aesKey);
+    }
+
+    @Benchmark
+    public SecretKey decodeAESKey() throws Exception {
+        return CryptoUtils.decodeAESKey(encodedAesKey);
+    }
+
+    @Benchmark
+    public String encryptAESKeyWithRSA() throws Exception {
+        return CryptoUtils.encryptAESKeyWithRSA(aesKey, rsaKeyPair.getPublic());
+    }
+
+    /**
+     * Decifratura RSA della chiave AES, il costo che il server paga a ogni handshake RSA.
+     */
+    @Benchmark
+    public SecretKey decryptAESKeyWithRSA() throws Exception {
+        return CryptoUtils.decryptAESKeyWithRSA(wrappedAesKey, rsaKeyPair.getPrivate());
+    }
+
+    @Benchmark
+    public SecretKey deriveAESKeyWithX25519() throws Exception {
+        return CryptoUtils.deriveAESKeyWithX25519(x25519KeyPair.getPrivate(), x25519PeerKeyPair.getPublic());
+    }
+
+    /**
+     * Handshake X25519 completo lato server: chiave effimera, sua codifica per il PUBLIC_KEY,
+     * decodifica della chiave pubblica del client e derivazione della chiave AES.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public SecretKey x25519Handshake(Blackhole blackhole) throws Exception {
+        KeyPair ephemeral = CryptoUtils.generateX25519KeyPair();
+        blackhole.consume(CryptoUtils.encodePublicKey(ephemeral.getPublic()));
+        PublicKey clientPublicKey = CryptoUtils.decodeX25519PublicKey(encodedX25519PeerPublicKey);
+        return CryptoUtils.deriveAESKeyWithX25519(ephemeral.getPrivate(), clientPublicKey);
+    }
+
+    /**
+     * Handshake RSA completo lato server: decodifica Base64 della chiave AES cifrata ricevuta
+     * nell'AES_KEY e sua decifratura con la chiave privata del server.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public SecretKey rsaHandshake() throws Exception {
+        return CryptoUtils.decryptAESKeyWithRSA(wrappedAesKey, rsaKeyPair.getPrivate());
+    }
+
+    @Benchmark
+    public SecretKey deriveResumedAESKey() throws Exception {
+        return CryptoUtils.deriveResumedAESKey(ticketSecret, clientNonce, serverNonce);
+    }
+
+    @Benchmark
+    public byte[] generateNonce() {
+        return CryptoUtils.generateNonce();
+    }
+
+    @Benchmark
+    public String encryptWithAES() throws Exception {
+        return CryptoUtils.encryptWithAES(MOVE, aesKey);
+    }
+
+    @Benchmark
+    public String decryptWithAES() throws Exception {
+        return CryptoUtils.decryptWithAES(encryptedMoveBase64, aesKey);
+    }
+
+    @Benchmark
+    public byte[] encryptBytesWithAES() throws Exception {
+        return CryptoUtils.encryptBytesWithAES(moveBytes, aesKey);
+    }
+
+    @Benchmark
+    public byte[] decryptBytesWithAES() throws Exception {
+        return CryptoUtils.decryptBytesWithAES(encryptedMoveBytes, aesKey);
+    }
+
+    /**
+     * Cifratura e decifratura di una mossa con i cifrari riutilizzati del contesto di connessione.
+     * Le due operazioni vanno misurate insieme perché il contesto rifiuta i contatori già visti.
+     */
+    @Benchmark
+    public byte[] contextRoundTrip() throws Exception {
+        return serverContext.decrypt(clientContext.encrypt(moveBytes));
+    }
+}
@@ -0,0 +1,110 @@
+package battaglia.tpsit.server;
+
+import battaglia.tpsit.common.GameMoves;
+import battaglia.tpsit.common.GameResult;
+import battaglia.tpsit.common.JsonCodec;
+import battaglia.tpsit.common.RoundOutcome;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della logica di gioco e della costruzione dei risultati.
+ * <p>
+ * Ogni invocazione passa alla combinazione di mosse successiva, così vengono misurati tutti i 25 esiti
+ * e il JIT non può specializzarsi su uno solo. Con il profiler delle allocazioni i benchmark sui risultati
+ * confrontano il {@link GameResult} costruito per ciascun giocatore con il JSON composto una sola volta
+ * dal modello dell'esito e inviato a entrambi.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+    private static final GameMoves[] MOVES = GameMoves.values();
+    private static final int COMBINATIONS = MOVES.length * MOVES.length;
+
+    private final GameSession[] sessions = new GameSession[COMBINATIONS];
+    private final RoundOutcome[] outcomes = new RoundOutcome[COMBINATIONS];
+    private PlayerSlot alice;
+    private PlayerSlot bob;
+    private byte[] quotedAlice;
+    private byte[] quotedBob;
+    private int next;
+
+    /**
+     * Prepara una sessione già risolta per ogni combinazione di mosse.
+     * Le sessioni non hanno un server né handler collegati: i risultati non vengono inviati.
+     */
+    @Setup
+    public void setUp() {
+        alice = new PlayerSlot(0, "alice", EloRatings.INITIAL_RATING);
+        bob = new PlayerSlot(1, "bob", EloRatings.INITIAL_RATING);
+        quotedAlice = JsonCodec.quote(alice.getUsername());
+        quotedBob = JsonCodec.quote(bob.getUsername());
+        for (int i = 0; i < COMBINATIONS; i++) {
+            sessions[i] = new GameSession(i, alice, bob, null);
+            sessions[i].registerMove(alice.getId(), move1(i));
+            sessions[i].registerMove(bob.getId(), move2(i));
+            outcomes[i] = RoundOutcome.of(move1(i), move2(i));
+        }
+    }
+
+    @Benchmark
+    public GameResult determineResult() {
+        int i = nextCombination();
+        return GameLogic.determineResult(alice.getUsername(), move1(i), bob.getUsername(), move2(i));
+    }
+
+    @Benchmark
+    public GameResult getResultForPlayer() {
+        return sessions[nextCombination()].getResultForPlayer(alice.getId());
+    }
+
+    /**
+     * Risultato serializzato come prima del modello pre-serializzato: un {@link GameResult}
+     * costruito e serializzato con Jackson per ciascuno dei due giocatori.
+     */
+    @Benchmark
+    public byte[] resultJsonPerPlayer() throws IOException {
+        GameSession session = sessions[nextCombination()];
+        JsonCodec.writeResult(session.getResultForPlayer(alice.getId()));
+        return JsonCodec.writeResult(session.getResultForPlayer(bob.getId()));
+    }
+
+    /**
+     * Risultato composto una sola volta dal modello dell'esito e condiviso dai due giocatori,
+     * come in {@link GameSession}.
+     */
+    @Benchmark
+    public byte[] resultJsonShared() {
+        RoundOutcome outcome = outcomes[nextCombination()];
+        return JsonCodec.writeResult(outcome, outcome.isWin() ? quotedAlice : quotedBob);
+    }
+
+    private int nextCombination() {
+        int i = next;
+        next = i + 1 == COMBINATIONS ? 0 : i + 1;
+        return i;
+    }
+
+    private static GameMoves move1(int combination) {
+        return MOVES[combination / MOVES.length];
+    }
+
+    private static GameMoves move2(int combination) {
+        return MOVES[combination % MOVES.length];
+    }
+}
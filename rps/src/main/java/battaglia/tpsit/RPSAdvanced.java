@@ -1,7 +1,10 @@
 package battaglia.tpsit;
 
+import battaglia.tpsit.client.Client;
 import battaglia.tpsit.client.ClientGUI;
+import battaglia.tpsit.client.LoadGenerator;
 import battaglia.tpsit.server.Server;
+import battaglia.tpsit.server.ServerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,24 +23,34 @@ public class RPSAdvanced {
      *
      * @param args Argomenti della riga di comando:
      *             <ul>
-     *                 <li>{@code --server}: Avvia il server</li>
-     *                 <li>{@code --client}: Avvia il client</li>
+     *                 <li>{@code --server}: Avvia il server; le opzioni successive (es. {@code --engine=nio})
+     *                 vengono lette da {@link ServerConfig#fromArgs(String[])}</li>
+     *                 <li>{@code --client}: Avvia il client; accetta {@code --host=} e {@code --port=}
+     *                 per scegliere il server (predefinito {@code localhost:12345})</li>
+     *                 <li>{@code --loadgen}: Avvia il generatore di carico senza interfaccia grafica;
+     *                 le opzioni sono descritte in {@link LoadGenerator}</li>
      *             </ul>
      *             Se nessun argomento è specificato, viene mostrata una finestra di dialogo per scegliere.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
         // Se viene passato l'argomento "--server", avvia solo il server
         if (args.length > 0 && args[0].equals("--server")) {
-            startServer();
+            startServer(ServerConfig.fromArgs(args));
             return;
         }
         
         // Se viene passato l'argomento "--client", avvia solo il client
         if (args.length > 0 && args[0].equals("--client")) {
-            startClient();
+            startClient(args);
             return;
         }
         
+        // Se viene passato l'argomento "--loadgen", simula molti giocatori senza interfaccia grafica
+        if (args.length > 0 && args[0].equals("--loadgen")) {
+            LoadGenerator.main(args);
+            return;
+        }
+
         // Altrimenti mostra una finestra di dialogo per scegliere
         SwingUtilities.invokeLater(() -> createSelectionDialog());
     }
@@ -60,14 +73,14 @@ public class RPSAdvanced {
         serverButton.addActionListener(e -> {
             logger.trace("Pulsante premuto: {}", e.getActionCommand());
             frame.dispose();
-            startServer();
+            startServer(new ServerConfig());
         });
         
         JButton clientButton = new JButton("Avvia Client");
         clientButton.addActionListener(e -> {
             logger.trace("Pulsante premuto: {}", e.getActionCommand());
             frame.dispose();
-            startClient();
+            startClient(new String[0]);
         });
         
         panel.add(label);
@@ -81,10 +94,12 @@ public class RPSAdvanced {
     /**
      * Avvia il server.
 * Crea una semplice interfaccia grafica per monitorare lo stato del server e fermarlo.
+     *
+     * @param config La configurazione del server
      */
-    private static void startServer() {
+    private static void startServer(ServerConfig config) {
         logger.info("Avvio del server...");
-        Server server = new Server();
+        Server server = new Server(config);
         
         // Crea una semplice interfaccia grafica per il server
         SwingUtilities.invokeLater(() -> {
@@ -95,7 +110,7 @@ public class RPSAdvanced {
             
             JPanel panel = new JPanel(new BorderLayout());
             
-            JLabel statusLabel = new JLabel("Server in esecuzione sulla porta 12345", SwingConstants.CENTER);
+            JLabel statusLabel = new JLabel("Server in esecuzione sulla porta " + config.getPort(), SwingConstants.CENTER);
             statusLabel.setFont(new Font("Arial", Font.BOLD, 16));
             
             JButton stopButton = new JButton("Arresta Server");
@@ -120,11 +135,25 @@ public class RPSAdvanced {
     /**
      * Avvia il client.
 * Crea e mostra l'interfaccia grafica del client.
+     *
+     * @param args Argomenti della riga di comando, da cui leggere {@code --host=} e {@code --port=}
      */
-    private static void startClient() {
-        logger.info("Avvio del client...");
+    private static void startClient(String[] args) {
+        String host = Client.DEFAULT_HOST;
+        int port = Client.DEFAULT_PORT;
+        for (String arg : args) {
+            if (arg.startsWith("--host=")) {
+                host = arg.substring("--host=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            }
+        }
+
+        logger.info("Avvio del client verso {}:{}...", host, port);
+        String serverHost = host;
+        int serverPort = port;
         SwingUtilities.invokeLater(() -> {
-            ClientGUI gui = new ClientGUI();
+            ClientGUI gui = new ClientGUI(serverHost, serverPort);
             gui.show();
         });
     }
@@ -1,50 +1,131 @@
 package battaglia.tpsit.client;
 
 import battaglia.tpsit.common.*;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.SecretKey;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
 import java.security.PublicKey;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Classe principale del client che gestisce la connessione al server.
+ * Il client richiede il codec binario nell'HELLO e lo adotta solo se il server lo conferma
+ * nel PUBLIC_KEY; altrimenti continua a usare il JSON delimitato da newline.
+ * <p>
+ * Il client non dipende da alcuna interfaccia grafica e non carica classi AWT o Swing, quindi
+ * può essere usato anche da bot e generatori di carico, migliaia per JVM. Gli eventi vengono
+ * notificati ai {@link ClientListener} registrati, oltre che tramite i future restituiti dai metodi.
  */
 public class Client {
     private static final Logger logger = LoggerFactory.getLogger(Client.class);
-    private static final String SERVER_HOST = "localhost";
-    private static final int SERVER_PORT = 12345;
+    public static final String DEFAULT_HOST = "localhost";
+    public static final int DEFAULT_PORT = 12345;
 
+    private final String host;
+    private final int port;
     private Socket socket;
-    private BufferedReader reader;
-    private BufferedWriter writer;
-    private ObjectMapper objectMapper;
+    private InputStream input;
+    private OutputStream output;
+    private volatile MessageCodec codec;
+    private boolean binaryProtocol = true;
+    private boolean ellipticCurveKeyExchange = true;
+    private boolean sessionResumption = true;
+    private SessionTicketCache.Entry resumptionTicket;
+    private byte[] resumptionNonce;
     private String username;
     private String opponentName;
     private PublicKey serverPublicKey;
-    private SecretKey aesKey;
+    private volatile CryptoContext crypto;
+    private volatile boolean compactMoves;
     private ClientHandler clientHandler;
+    private final List<ClientListener> listeners = new CopyOnWriteArrayList<>();
     private AtomicBoolean connected = new AtomicBoolean(false);
     private CompletableFuture<Void> connectionFuture = new CompletableFuture<>();
     private CompletableFuture<String> gameStartFuture = new CompletableFuture<>();
-    private CompletableFuture<GameResult> resultFuture = new CompletableFuture<>();
+    private CompletableFuture<String> deliveredGameStart;
+    private volatile CompletableFuture<GameResult> resultFuture = new CompletableFuture<>();
 
     /**
-     * Costruttore per il client.
+     * Costruttore per il client, connesso al server predefinito {@value #DEFAULT_HOST}:{@value #DEFAULT_PORT}.
      *
      * @param username Nome utente del client
      */
     public Client(String username) {
+        this(username, DEFAULT_HOST, DEFAULT_PORT);
+    }
+
+    /**
+     * Costruttore per il client.
+     *
+     * @param username Nome utente del client
+     * @param host     Indirizzo del server
+     * @param port     Porta del server
+     */
+    public Client(String username, String host, int port) {
         this.username = username;
-        this.objectMapper = new ObjectMapper();
+        this.host = host;
+        this.port = port;
+        this.codec = new JsonLineCodec();
+    }
+
+    /**
+     * Registra un listener per gli eventi del client.
+     * Va registrato prima di {@link #connect()} per non perdere i primi eventi.
+     *
+     * @param listener Il listener da registrare
+     */
+    public void addListener(ClientListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Rimuove un listener registrato.
+     *
+     * @param listener Il listener da rimuovere
+     */
+    public void removeListener(ClientListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Indica se richiedere al server il codec binario durante l'handshake.
+     * Deve essere impostato prima di {@link #connect()}.
+     *
+     * @param binaryProtocol {@code true} per richiedere il codec binario (predefinito)
+     */
+    public void setBinaryProtocol(boolean binaryProtocol) {
+        this.binaryProtocol = binaryProtocol;
+    }
+
+    /**
+     * Indica se richiedere al server lo scambio di chiavi X25519 al posto di RSA.
+     * Deve essere impostato prima di {@link #connect()}.
+     *
+     * @param ellipticCurveKeyExchange {@code true} per richiedere X25519 (predefinito)
+     */
+    public void setEllipticCurveKeyExchange(boolean ellipticCurveKeyExchange) {
+        this.ellipticCurveKeyExchange = ellipticCurveKeyExchange;
+    }
+
+    /**
+     * Indica se riprendere la sessione con un ticket ricevuto in una connessione precedente.
+     * Deve essere impostato prima di {@link #connect()}.
+     *
+     * @param sessionResumption {@code true} per usare i ticket di ripresa (predefinito)
+     */
+    public void setSessionResumption(boolean sessionResumption) {
+        this.sessionResumption = sessionResumption;
     }
 
     /**
@@ -54,18 +135,34 @@ public class Client {
      */
     public CompletableFuture<Void> connect() {
         try {
-            this.socket = new Socket(SERVER_HOST, SERVER_PORT);
-            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            this.socket = new Socket(host, port);
+            this.input = new BufferedInputStream(socket.getInputStream());
+            this.output = new BufferedOutputStream(socket.getOutputStream());
 
             // Avvia il thread per la lettura dei messaggi dal server
-            this.clientHandler = new ClientHandler(this, reader);  // Passa il reader direttamente
+            this.clientHandler = new ClientHandler(this, input);
             Thread handlerThread = new Thread(clientHandler);
             handlerThread.setDaemon(true);
             handlerThread.start();
 
             // Invia il messaggio HELLO per iniziare la procedura di handshake
-            Message helloMessage = Message.createHello(username);
+            String features = binaryProtocol ? ProtocolFeatures.BINARY : null;
+            features = ProtocolFeatures.add(features, ProtocolFeatures.GCM);
+            features = ProtocolFeatures.add(features, ProtocolFeatures.HEARTBEAT);
+            features = ProtocolFeatures.add(features, ProtocolFeatures.MOVE8);
+            if (ellipticCurveKeyExchange) {
+                features = ProtocolFeatures.add(features, ProtocolFeatures.X25519);
+            }
+
+            // Con un ticket valido il server può riprendere la sessione in un solo scambio
+            Message helloMessage;
+            resumptionTicket = sessionResumption ? SessionTicketCache.find(serverAddress(), username) : null;
+            if (resumptionTicket != null) {
+                resumptionNonce = CryptoUtils.generateNonce();
+                helloMessage = Message.createResumeHello(username, features, resumptionTicket.getTicket(), resumptionNonce);
+            } else {
+                helloMessage = Message.createHello(username, features);
+            }
             sendMessage(helloMessage);
 
             logger.info("Client avviato e connesso al server");
@@ -83,23 +180,22 @@ public class Client {
      * Invia una mossa al server.
      *
      * @param move La mossa da inviare
-     * @return CompletableFuture che completa con il risultato della partita
+     * @return CompletableFuture che completa con il risultato della manche
      * @throws Exception Se si verifica un errore durante l'invio della mossa
      */
     public CompletableFuture<GameResult> sendMove(GameMoves move) throws Exception {
-        if (!connected.get() || aesKey == null) {
+        if (!connected.get() || crypto == null) {
             throw new IllegalStateException("Client non connesso o crittografia non inizializzata");
         }
 
-        // Reset del future per il risultato
-        resultFuture = new CompletableFuture<>();
-
-        // Cripta la mossa con AES
-        String moveStr = move.name();
-        String encryptedMoveBase64 = CryptoUtils.encryptWithAES(moveStr, aesKey);
+        // Cripta la mossa con AES: un byte con l'ordinale se il server lo supporta, altrimenti il nome
+        byte[] moveBytes = compactMoves
+                ? new byte[] {(byte) move.ordinal()}
+                : move.name().getBytes(StandardCharsets.UTF_8);
+        byte[] encryptedMove = crypto.encrypt(moveBytes);
 
         // Crea e invia il messaggio
-        Message moveMessage = Message.createMove(encryptedMoveBase64);
+        Message moveMessage = Message.createMove(encryptedMove);
         sendMessage(moveMessage);
 
         logger.info("Mossa inviata: {}", move);
@@ -112,11 +208,18 @@ public class Client {
      * @param message Il messaggio da inviare
      * @throws Exception Se si verifica un errore durante l'invio del messaggio
      */
-    public void sendMessage(Message message) throws Exception {
-        String messageJson = objectMapper.writeValueAsString(message);
-        writer.write(messageJson);
-        writer.newLine();
-        writer.flush();
+    public synchronized void sendMessage(Message message) throws Exception {
+        codec.write(message, output);
+        output.flush();
+    }
+
+    /**
+     * Restituisce il codec attualmente in uso per i messaggi.
+     *
+     * @return Il codec dei messaggi
+     */
+    MessageCodec getCodec() {
+        return codec;
     }
 
     /**
@@ -130,8 +233,17 @@ public class Client {
                 case PUBLIC_KEY:
                     handlePublicKey(message);
                     break;
+                case RESUMED:
+                    handleResumed(message);
+                    break;
+                case SESSION_TICKET:
+                    handleSessionTicket(message);
+                    break;
                 case WAIT_OPPONENT:
                     logger.info("In attesa di un avversario...");
+                    for (ClientListener listener : listeners) {
+                        listener.onWaitingForOpponent();
+                    }
                     break;
                 case GAME_START:
                     handleGameStart(message);
@@ -141,6 +253,12 @@ public class Client {
                     break;
                 case ERROR:
                     logger.error("Errore dal server: {}", message.getData());
+                    for (ClientListener listener : listeners) {
+                        listener.onError(message.getData());
+                    }
+                    break;
+                case PING:
+                    sendMessage(Message.createPong());
                     break;
                 default:
                     logger.warn("Tipo di messaggio non gestito: {}", message.getType());
@@ -157,24 +275,106 @@ public class Client {
      * @throws Exception Se si verifica un errore durante la gestione
      */
     private void handlePublicKey(Message message) throws Exception {
+        if (resumptionTicket != null) {
+            // Il server ha rifiutato il ticket e ha avviato l'handshake completo
+            SessionTicketCache.remove(serverAddress(), username);
+            resumptionTicket = null;
+            logger.debug("Ticket di ripresa rifiutato dal server");
+        }
+
         String publicKeyBase64 = message.getKey();
-        this.serverPublicKey = CryptoUtils.decodePublicKey(publicKeyBase64);
-        logger.debug("Chiave pubblica RSA ricevuta dal server");
+        boolean x25519 = ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.X25519);
 
-        // Genera una chiave AES casuale
-        this.aesKey = CryptoUtils.generateAESKey();
+        // Da qui in poi entrambi i lati usano il codec confermato dal server
+        if (ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.BINARY)) {
+            this.codec = new BinaryCodec();
+            logger.debug("Codec binario negoziato con il server");
+        }
 
-        // Cripta la chiave AES con la chiave pubblica del server
-        String encryptedKeyBase64 = CryptoUtils.encryptAESKeyWithRSA(aesKey, serverPublicKey);
+        SecretKey aesKey;
+        Message aesKeyMessage;
+        if (x25519) {
+            // Deriva la chiave AES dallo scambio X25519 e invia la propria chiave pubblica effimera
+            KeyPair keyExchangePair = CryptoUtils.generateX25519KeyPair();
+            PublicKey serverKey = CryptoUtils.decodeX25519PublicKey(publicKeyBase64);
+            aesKey = CryptoUtils.deriveAESKeyWithX25519(keyExchangePair.getPrivate(), serverKey);
+            aesKeyMessage = Message.createAesKey(CryptoUtils.encodePublicKey(keyExchangePair.getPublic()));
+            logger.debug("Chiave AES derivata con X25519");
+        } else {
+            this.serverPublicKey = CryptoUtils.decodePublicKey(publicKeyBase64);
+            logger.debug("Chiave pubblica RSA ricevuta dal server");
 
-        // Invia la chiave AES crittografata al server
-        Message aesKeyMessage = Message.createAesKey(encryptedKeyBase64);
-        sendMessage(aesKeyMessage);
+            // Genera una chiave AES casuale e la cripta con la chiave pubblica del server
+            aesKey = CryptoUtils.generateAESKey();
+            aesKeyMessage = Message.createAesKey(CryptoUtils.encryptAESKeyWithRSA(aesKey, serverPublicKey));
+            logger.debug("Chiave AES generata");
+        }
 
-        logger.debug("Chiave AES generata e inviata al server");
+        // Crea il contesto per cifrare i messaggi e invia la chiave al server
+        boolean authenticated = ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.GCM);
+        this.crypto = CryptoContext.forClient(aesKey, authenticated);
+        this.compactMoves = ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.MOVE8);
+        sendMessage(aesKeyMessage);
 
         // Completa il future della connessione
         connectionFuture.complete(null);
+        for (ClientListener listener : listeners) {
+            listener.onConnected();
+        }
+    }
+
+    /**
+     * Gestisce un messaggio di tipo RESUMED, che conferma la ripresa della sessione tramite ticket.
+     *
+     * @param message Il messaggio RESUMED
+     * @throws Exception Se si verifica un errore durante la gestione
+     */
+    private void handleResumed(Message message) throws Exception {
+        if (resumptionTicket == null) {
+            logger.warn("Ripresa della sessione non richiesta");
+            return;
+        }
+
+        // Deriva la nuova chiave dal segreto del ticket e dai nonce di client e server
+        SecretKey aesKey = CryptoUtils.deriveResumedAESKey(resumptionTicket.getSecret(), resumptionNonce,
+                message.getPayload());
+        boolean authenticated = ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.GCM);
+        this.crypto = CryptoContext.forClient(aesKey, authenticated);
+        this.compactMoves = ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.MOVE8);
+        resumptionTicket = null;
+        resumptionNonce = null;
+
+        if (ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.BINARY)) {
+            this.codec = new BinaryCodec();
+            logger.debug("Codec binario negoziato con il server");
+        }
+        logger.debug("Sessione ripresa tramite ticket");
+
+        connectionFuture.complete(null);
+        for (ClientListener listener : listeners) {
+            listener.onConnected();
+        }
+    }
+
+    /**
+     * Gestisce un messaggio di tipo SESSION_TICKET, memorizzando il ticket per le connessioni successive.
+     *
+     * @param message Il messaggio SESSION_TICKET
+     */
+    private void handleSessionTicket(Message message) {
+        long lifetimeSeconds = Long.parseLong(message.getData());
+        SessionTicketCache.store(serverAddress(), username, message.getKey(), crypto.getKey().getEncoded(),
+                lifetimeSeconds);
+        logger.debug("Ticket di ripresa ricevuto, valido per {} secondi", lifetimeSeconds);
+    }
+
+    /**
+     * Restituisce l'indirizzo del server usato come chiave per i ticket di ripresa.
+     *
+     * @return L'indirizzo nel formato {@code host:porta}
+     */
+    private String serverAddress() {
+        return host + ":" + port;
     }
 
     /**
@@ -183,11 +383,25 @@ public class Client {
      * @param message Il messaggio GAME_START
      */
     private void handleGameStart(Message message) {
-        this.opponentName = message.getData();
-        logger.info("Partita iniziata contro {}", opponentName);
+        String opponent = message.getData();
+        synchronized (this) {
+            this.opponentName = opponent;
+            logger.info("Partita iniziata contro {}", opponent);
+
+            // Il risultato della manche può arrivare anche senza una mossa, se il tempo scade
+            resultFuture = new CompletableFuture<>();
+
+            // Completa il future dell'inizio partita
+            if (!gameStartFuture.complete(opponent)) {
+                // Nessuno è ancora in attesa della nuova partita: la conserva per la prossima richiesta
+                gameStartFuture = CompletableFuture.completedFuture(opponent);
+            }
+        }
 
-        // Completa il future dell'inizio partita
-        gameStartFuture.complete(opponentName);
+        // I listener vengono notificati fuori dal lock, così possono inviare subito la mossa
+        for (ClientListener listener : listeners) {
+            listener.onGameStart(opponent);
+        }
     }
 
     /**
@@ -197,11 +411,11 @@ public class Client {
      * @throws Exception Se si verifica un errore durante la gestione
      */
     private void handleResult(Message message) throws Exception {
-        String encryptedResultBase64 = message.getData();
-        String resultJson = CryptoUtils.decryptWithAES(encryptedResultBase64, aesKey);
+        byte[] encryptedResult = message.getPayload();
+        byte[] resultJson = crypto.decrypt(encryptedResult);
 
         // Converte il JSON in oggetto GameResult
-        GameResult result = objectMapper.readValue(resultJson, GameResult.class);
+        GameResult result = JsonCodec.readResult(resultJson);
         logger.info("Risultato ricevuto: {}", result.getWinDescription());
 
         // Verifica se il future è già completato
@@ -213,6 +427,10 @@ public class Client {
             // Crea un nuovo future e lo completa immediatamente
             resultFuture = CompletableFuture.completedFuture(result);
         }
+
+        for (ClientListener listener : listeners) {
+            listener.onResult(result);
+        }
     }
 
     /**
@@ -220,12 +438,25 @@ public class Client {
      *
      * @return CompletableFuture che completa con il nome dell'avversario
      */
-    public CompletableFuture<String> waitForGameStart() {
-        // Reset del future per l'inizio partita
-        gameStartFuture = new CompletableFuture<>();
+    public synchronized CompletableFuture<String> waitForGameStart() {
+        // Reset del future per l'inizio partita, a meno che la partita non sia già iniziata
+        if (gameStartFuture == deliveredGameStart) {
+            gameStartFuture = new CompletableFuture<>();
+        }
+        deliveredGameStart = gameStartFuture;
         return gameStartFuture;
     }
 
+    /**
+     * Attende il risultato della manche in corso, inviato dal server dopo le mosse di entrambi
+     * i giocatori o allo scadere del tempo per la mossa.
+     *
+     * @return CompletableFuture che completa con il risultato della manche
+     */
+    public CompletableFuture<GameResult> waitForResult() {
+        return resultFuture;
+    }
+
     /**
      * Chiude la connessione con il server.
      */
@@ -233,17 +464,19 @@ public class Client {
         try {
             connected.set(false);
 
+            // L'handler va fermato prima di chiudere il socket, altrimenti la lettura interrotta
+            // verrebbe scambiata per una perdita di connessione
+            if (clientHandler != null) {
+                clientHandler.stop();
+            }
             if (socket != null && !socket.isClosed()) {
                 socket.close();
             }
-            if (reader != null) {
-                reader.close();
-            }
-            if (writer != null) {
-                writer.close();
+            if (input != null) {
+                input.close();
             }
-            if (clientHandler != null) {
-                clientHandler.stop();
+            if (output != null) {
+                output.close();
             }
 
             logger.info("Connessione chiusa");
@@ -252,6 +485,24 @@ public class Client {
         }
     }
 
+    /**
+     * Gestisce una disconnessione non richiesta dal client: chiude la connessione e
+     * notifica i listener. Invocato dal {@link ClientHandler}.
+     *
+     * @param reason La causa della disconnessione
+     */
+    void handleDisconnection(String reason) {
+        // Se il client ha già chiuso la connessione non c'è nulla da notificare
+        if (!connected.compareAndSet(true, false)) {
+            return;
+        }
+        close();
+
+        for (ClientListener listener : listeners) {
+            listener.onDisconnected(reason);
+        }
+    }
+
     /**
      * Invia un messaggio di prontezza per il prossimo round.
      *
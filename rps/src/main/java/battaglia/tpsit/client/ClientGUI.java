@@ -16,8 +16,10 @@ import java.util.Map;
 
 /**
  * Classe che gestisce l'interfaccia grafica del client.
+ * È uno dei possibili {@link ClientListener}: riceve gli eventi del client dal thread di lettura
+ * e li riporta sul thread di Swing.
  */
-public class ClientGUI {
+public class ClientGUI implements ClientListener {
     private static final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
 
 
@@ -51,13 +53,27 @@ public class ClientGUI {
     // Icone per le mosse
     private Map<GameMoves, ImageIcon> moveIcons = new HashMap<>();
     
+    private final String host;
+    private final int port;
     private Client client;
     private GameMoves lastMove;
     
     /**
-     * Costruttore per l'interfaccia grafica.
+     * Costruttore per l'interfaccia grafica, collegata al server predefinito.
      */
     public ClientGUI() {
+        this(Client.DEFAULT_HOST, Client.DEFAULT_PORT);
+    }
+
+    /**
+     * Costruttore per l'interfaccia grafica.
+     *
+     * @param host Indirizzo del server
+     * @param port Porta del server
+     */
+    public ClientGUI(String host, int port) {
+        this.host = host;
+        this.port = port;
         loadIcons();
         initializeGUI();
         applyCustomStyle();
@@ -253,13 +269,11 @@ public class ClientGUI {
             statusLabel.setForeground(INFO_COLOR);
             
             // Creazione e connessione del client
-            client = new Client(username);
+            client = new Client(username, host, port);
+            client.addListener(this);
             client.connect().thenRun(() -> {
                 // Passaggio al pannello di attesa
-                SwingUtilities.invokeLater(() -> {
-                    showPanel("waiting");
-                    waitForGameStart();
-                });
+                SwingUtilities.invokeLater(() -> showPanel("waiting"));
             }).exceptionally(ex -> {
                 // Gestione errore di connessione
                 SwingUtilities.invokeLater(() -> {
@@ -401,10 +415,8 @@ public class ClientGUI {
             // Invia la mossa al server
             this.setLastMove(move);
             try {
-                client.sendMove(move).thenAccept(result -> {
-                    // Mostra il risultato nella schermata apposita
-                    SwingUtilities.invokeLater(() -> showResult(result));
-                }).exceptionally(ex -> {
+                // Il risultato viene mostrato da onResult
+                client.sendMove(move).exceptionally(ex -> {
                     SwingUtilities.invokeLater(() -> {
                         JOptionPane.showMessageDialog(frame, 
                                 "Errore durante l'invio della mossa: " + ex.getMessage(), 
@@ -453,7 +465,6 @@ public class ClientGUI {
             try {
                 client.readyForNextRound();
                 showPanel("waiting");
-                waitForGameStart();
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(frame, "Errore: " + ex.getMessage());
             }
@@ -469,21 +480,47 @@ public class ClientGUI {
     }
     
     /**
-     * Attende l'inizio di una partita.
+     * Mostra la schermata di gioco all'inizio di una manche.
+     *
+     * @param opponentName Nome dell'avversario
      */
-    private void waitForGameStart() {
-        client.waitForGameStart().thenAccept(opponentName -> {
-            SwingUtilities.invokeLater(() -> {
-                // Aggiorna l'etichetta con il nome dell'avversario
-                opponentLabel.setText("Stai giocando contro: " + opponentName);
-                
-                setMoveButtonsEnabled(true);
-                
-                // Passa alla schermata di gioco
-                showPanel("game");
-            });
+    @Override
+    public void onGameStart(String opponentName) {
+        SwingUtilities.invokeLater(() -> {
+            // Aggiorna l'etichetta con il nome dell'avversario
+            opponentLabel.setText("Stai giocando contro: " + opponentName);
+
+            setMoveButtonsEnabled(true);
+
+            // Passa alla schermata di gioco
+            showPanel("game");
         });
     }
+
+    /**
+     * Mostra il risultato, arrivato dopo la mossa o allo scadere del tempo a disposizione.
+     *
+     * @param result Il risultato della manche
+     */
+    @Override
+    public void onResult(GameResult result) {
+        SwingUtilities.invokeLater(() -> showResult(result));
+    }
+
+    /**
+     * Mostra un messaggio di errore quando la connessione con il server si interrompe.
+     *
+     * @param reason La causa della disconnessione
+     */
+    @Override
+    public void onDisconnected(String reason) {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+                frame,
+                reason,
+                "Errore di connessione",
+                JOptionPane.ERROR_MESSAGE
+        ));
+    }
     
     /**
      * Mostra il risultato di una partita.
@@ -513,7 +550,25 @@ public class ClientGUI {
         String resultMessage;
         String resultColor;
         
-        if (result.isDraw()) {
+        if (result.isForfeit()) {
+            String winner = result.getWinnerUsername();
+            if (winner == null) {
+                yourMove = null;
+                opponentMove = null;
+                resultMessage = "Tempo scaduto!";
+                resultColor = BLUE;
+            } else if (winner.equals(client.getUsername())) {
+                yourMove = result.getPlayerMove();
+                opponentMove = null;
+                resultMessage = "Vittoria a tavolino!";
+                resultColor = GREEN;
+            } else {
+                yourMove = null;
+                opponentMove = result.getPlayerMove();
+                resultMessage = "Sconfitta a tavolino";
+                resultColor = RED;
+            }
+        } else if (result.isDraw()) {
             yourMove = this.getLastMove();
             opponentMove = this.getLastMove();
             resultMessage = "È un pareggio!";
@@ -530,9 +585,11 @@ public class ClientGUI {
             resultColor = RED;
         }
         
-        html.append("<td>").append(BOLD).append(yourMove.toString()).append(END_BOLD).append("</td></tr>");
+        html.append("<td>").append(BOLD).append(yourMove != null ? yourMove.toString() : "-")
+            .append(END_BOLD).append("</td></tr>");
         html.append("<tr><td style='font-weight: bold'>Mossa dell'avversario:</td>");
-        html.append("<td>").append(BOLD).append(opponentMove.toString()).append(END_BOLD).append("</td></tr>");
+        html.append("<td>").append(BOLD).append(opponentMove != null ? opponentMove.toString() : "-")
+            .append(END_BOLD).append("</td></tr>");
         html.append("</table>");
         
         // Risultato
@@ -1,38 +1,35 @@
 package battaglia.tpsit.client;
 
 import battaglia.tpsit.common.Message;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.SocketException;
-import javax.swing.SwingUtilities;
-import javax.swing.JOptionPane;
 
 /**
  * Classe che gestisce i messaggi in arrivo dal server.
  * Implementa l'interfaccia {@link Runnable} per essere eseguita in un thread separato.
+ * Non dipende da alcuna interfaccia grafica: le disconnessioni vengono notificate al client,
+ * che le inoltra ai propri {@link ClientListener}.
  */
 public class ClientHandler implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
 
     private Client client;
-    private BufferedReader reader;
-    private ObjectMapper objectMapper;
+    private InputStream input;
     private volatile boolean running;
 
     /**
      * Costruttore per il gestore dei messaggi.
      *
      * @param client Il client a cui è associato questo handler
-     * @param reader Il {@link BufferedReader} per leggere i messaggi dal server
+     * @param input Lo stream bufferizzato da cui leggere i messaggi del server
      */
-    public ClientHandler(Client client, BufferedReader reader) {
+    public ClientHandler(Client client, InputStream input) {
         this.client = client;
-        this.reader = reader;
-        this.objectMapper = new ObjectMapper();
+        this.input = input;
         this.running = true;
     }
 
@@ -45,17 +42,15 @@ public class ClientHandler implements Runnable {
         try {
             // Continua a leggere i messaggi finché l'handler è in esecuzione
             while (running) {
-                String messageStr = reader.readLine();
-                if (messageStr == null) {
+                // Il codec viene riletto a ogni messaggio perché il PUBLIC_KEY può cambiarlo
+                Message message = client.getCodec().read(input);
+                if (message == null) {
                     // Il server si è disconnesso
                     logger.warn("Il server si è disconnesso (EOF)");
                     handleDisconnection("Il server si è disconnesso");
                     break;
                 }
 
-                // Analizza il messaggio ricevuto
-                Message message = objectMapper.readValue(messageStr, Message.class);
-
                 // Passa il messaggio al client per la gestione
                 client.handleMessage(message);
             }
@@ -78,23 +73,12 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Gestisce la disconnessione dal server.
-     * Mostra un messaggio di errore all'utente e chiude il client.
+     * Gestisce la disconnessione dal server, chiudendo il client e notificando i suoi listener.
      *
-     * @param message Il messaggio di errore da mostrare
+     * @param message La causa della disconnessione
      */
     private void handleDisconnection(String message) {
-        if (client.isConnected()) {
-            SwingUtilities.invokeLater(() -> {
-                JOptionPane.showMessageDialog(
-                        null,
-                        message,
-                        "Errore di connessione",
-                        JOptionPane.ERROR_MESSAGE
-                );
-            });
-            client.close();
-        }
+        client.handleDisconnection(message);
     }
 
     /**
@@ -104,4 +88,4 @@ public class ClientHandler implements Runnable {
     public void stop() {
         running = false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package battaglia.tpsit.client;
+
+import battaglia.tpsit.common.GameResult;
+
+/**
+ * Riceve gli eventi di un {@link Client}: connessione, attesa, inizio partita, risultato ed errori.
+ * <p>
+ * I metodi vengono invocati dal thread che legge i messaggi del server, quindi non devono
+ * bloccare: un'interfaccia grafica deve passare l'evento al proprio thread (ad esempio con
+ * {@code SwingUtilities.invokeLater}), un bot può reagire direttamente inviando la mossa.
+ * Tutti i metodi hanno un'implementazione vuota, così basta ridefinire quelli che interessano.
+ */
+public interface ClientListener {
+
+    /**
+     * Invocato quando l'handshake è completato e il client può giocare.
+     */
+    default void onConnected() {
+    }
+
+    /**
+     * Invocato quando il server mette il giocatore in coda in attesa di un avversario.
+     */
+    default void onWaitingForOpponent() {
+    }
+
+    /**
+     * Invocato all'inizio di ogni manche.
+     *
+     * @param opponentName Nome dell'avversario
+     */
+    default void onGameStart(String opponentName) {
+    }
+
+    /**
+     * Invocato quando arriva il risultato della manche, dopo le mosse o allo scadere del tempo.
+     *
+     * @param result Il risultato della manche
+     */
+    default void onResult(GameResult result) {
+    }
+
+    /**
+     * Invocato quando il server segnala un errore.
+     *
+     * @param message Il messaggio di errore del server
+     */
+    default void onError(String message) {
+    }
+
+    /**
+     * Invocato quando la connessione con il server si interrompe senza che il client l'abbia chiusa.
+     *
+     * @param reason La causa della disconnessione
+     */
+    default void onDisconnected(String reason) {
+    }
+}
@@ -0,0 +1,359 @@
+package battaglia.tpsit.client;
+
+import battaglia.tpsit.common.GameMoves;
+import battaglia.tpsit.common.GameResult;
+import battaglia.tpsit.server.Server;
+import battaglia.tpsit.server.ServerConfig;
+import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark end-to-end della latenza: avvia il {@link Server} nello stesso processo su una porta libera
+ * e gli fa giocare manche complete da coppie di client reali, senza tempi di riflessione, misurando
+ * il tempo tra l'invio della mossa e l'arrivo del risultato.
+ * <p>
+ * La misura viene ripetuta per ogni livello di concorrenza richiesto (numero di coppie che giocano
+ * contemporaneamente); per ciascun livello le prime manche di ogni client servono da riscaldamento e
+ * non vengono registrate. I risultati vengono scritti in JSON, così possono essere confrontati tra
+ * commit diversi: con {@code --baseline} la latenza p50 e p99 e le manche al secondo di ogni livello
+ * vengono confrontate con quelle di un'esecuzione precedente, e se uno dei valori peggiora oltre la
+ * soglia il processo termina con codice 1.
+ * <p>
+ * Opzioni, nel formato {@code --chiave=valore}:
+ * <ul>
+ *     <li>{@code --concurrency=N,N,...}: Coppie di client per ogni livello (predefinito 1,8,32)</li>
+ *     <li>{@code --rounds=N}: Manche misurate per client a ogni livello (predefinito 500)</li>
+ *     <li>{@code --warmup=N}: Manche di riscaldamento per client a ogni livello (predefinito 100)</li>
+ *     <li>{@code --output=FILE}: File JSON dei risultati (predefinito {@code target/latency-result.json})</li>
+ *     <li>{@code --baseline=FILE}: Risultati di riferimento con cui confrontare l'esecuzione</li>
+ *     <li>{@code --threshold=P}: Peggioramento percentuale tollerato rispetto al riferimento (predefinito 10)</li>
+ *     <li>{@code --log=LIVELLO}: Livello dei log dell'applicazione (predefinito WARN)</li>
+ * </ul>
+ * Le altre opzioni vengono passate a {@link ServerConfig#fromArgs(String[])}, ad esempio {@code --engine=nio}.
+ */
+public final class LatencyHarness {
+    private static final long STARTUP_TIMEOUT_SECONDS = 10;
+    private static final long LEVEL_TIMEOUT_SECONDS = 120;
+    private static final String DEFAULT_OUTPUT = "target/latency-result.json";
+    private static final String[] COMPARED_LATENCIES = {"p50", "p99"};
+
+    private final int port;
+    private final int rounds;
+    private final int warmup;
+    private final AtomicInteger nextPlayer = new AtomicInteger();
+
+    /**
+     * Costruttore dell'harness.
+     *
+     * @param server Il server in esecuzione nello stesso processo
+     * @param rounds Manche misurate per client a ogni livello
+     * @param warmup Manche di riscaldamento per client a ogni livello
+     */
+    public LatencyHarness(Server server, int rounds, int warmup) {
+        this.port = server.getLocalPort();
+        this.rounds = rounds;
+        this.warmup = warmup;
+    }
+
+    /**
+     * Punto di ingresso dell'harness.
+     *
+     * @param args Opzioni nel formato {@code --chiave=valore}, descritte nella documentazione della classe
+     * @throws Exception Se il server non si avvia o i file dei risultati non sono accessibili
+     */
+    public static void main(String[] args) throws Exception {
+        int[] levels = {1, 8, 32};
+        int rounds = 500;
+        int warmup = 100;
+        String output = DEFAULT_OUTPUT;
+        String baseline = null;
+        double threshold = 10;
+        String logLevel = "WARN";
+        List<String> serverArgs = new ArrayList<>();
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String name = separator < 0 ? arg : arg.substring(0, separator);
+            String value = separator < 0 ? "" : arg.substring(separator + 1);
+            switch (name) {
+                case "--concurrency":
+                    String[] parts = value.split(",");
+                    levels = new int[parts.length];
+                    for (int i = 0; i < parts.length; i++) {
+                        levels[i] = Integer.parseInt(parts[i].trim());
+                    }
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--output":
+                    output = value;
+                    break;
+                case "--baseline":
+                    baseline = value;
+                    break;
+                case "--threshold":
+                    threshold = Double.parseDouble(value);
+                    break;
+                case "--log":
+                    logLevel = value;
+                    break;
+                default:
+                    serverArgs.add(arg);
+            }
+        }
+
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("battaglia.tpsit"))
+                .setLevel(Level.toLevel(logLevel, Level.WARN));
+
+        ServerConfig config = ServerConfig.fromArgs(serverArgs.toArray(new String[0]));
+        config.setPort(0);
+        Server server = new Server(config);
+        Thread serverThread = new Thread(server::start, "rps-harness-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        if (!server.awaitStarted(STARTUP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            System.err.println("Il server non si è avviato");
+            System.exit(2);
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode report = mapper.createObjectNode();
+        report.put("timestamp", Instant.now().toString());
+        report.put("engine", config.getEngine().name());
+        report.put("rounds", rounds);
+        report.put("warmup", warmup);
+        ArrayNode results = report.putArray("levels");
+
+        LatencyHarness harness = new LatencyHarness(server, rounds, warmup);
+        try {
+            for (int pairs : levels) {
+                results.add(harness.runLevel(pairs, mapper));
+            }
+        } finally {
+            server.stop();
+        }
+
+        File outputFile = new File(output);
+        if (outputFile.getParentFile() != null) {
+            outputFile.getParentFile().mkdirs();
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(outputFile, report);
+        System.out.println("Risultati salvati in " + outputFile.getPath());
+
+        if (baseline != null) {
+            List<String> regressions = compare(mapper.readTree(new File(baseline)), report, threshold);
+            if (!regressions.isEmpty()) {
+                System.out.println("Regressioni oltre il " + threshold + "% rispetto a " + baseline + ":");
+                regressions.forEach(regression -> System.out.println("  " + regression));
+                System.exit(1);
+            }
+            System.out.println("Nessuna regressione oltre il " + threshold + "% rispetto a " + baseline);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Esegue un livello di concorrenza: connette le coppie di client, le fa giocare finché ogni client
+     * non ha completato il riscaldamento e le manche misurate, poi le disconnette.
+     * La misura parte solo quando tutti i client hanno finito il riscaldamento, così le manche
+     * conteggiate cadono tutte nella finestra usata per calcolare le manche al secondo.
+     *
+     * @param pairs  Numero di coppie di client
+     * @param mapper Il mapper con cui costruire il risultato
+     * @return Il risultato del livello in JSON
+     * @throws IOException          Se un client non riesce a connettersi o il livello non termina in tempo
+     * @throws InterruptedException Se il thread viene interrotto
+     */
+    public ObjectNode runLevel(int pairs, ObjectMapper mapper) throws IOException, InterruptedException {
+        int clients = pairs * 2;
+        LatencyHistogram histogram = new LatencyHistogram();
+        CountDownLatch done = new CountDownLatch(clients);
+        CountDownLatch warmedUp = new CountDownLatch(warmup > 0 ? clients : 0);
+        AtomicBoolean measuring = new AtomicBoolean();
+        List<HarnessPlayer> players = new ArrayList<>(clients);
+
+        for (int i = 0; i < clients; i++) {
+            HarnessPlayer player = new HarnessPlayer("harness" + nextPlayer.getAndIncrement(), port,
+                    histogram, measuring, warmedUp, done);
+            players.add(player);
+            try {
+                player.client.connect().get(STARTUP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                closeAll(players);
+                throw new IOException("Connessione del client " + i + " fallita", e);
+            }
+        }
+
+        boolean completed = warmedUp.await(LEVEL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        long measureStart = System.nanoTime();
+        measuring.set(true);
+        completed = completed && done.await(LEVEL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+        closeAll(players);
+        if (!completed) {
+            throw new IOException("Il livello con " + pairs + " coppie non è terminato entro "
+                    + LEVEL_TIMEOUT_SECONDS + " secondi");
+        }
+
+        // Ogni manche produce un risultato per ciascuno dei due client
+        double roundsPerSecond = histogram.getCount() / 2.0 / seconds;
+        System.out.printf("%d coppie: %.0f manche/s, %s%n", pairs, roundsPerSecond, histogram.summary());
+
+        ObjectNode level = mapper.createObjectNode();
+        level.put("pairs", pairs);
+        level.put("clients", clients);
+        level.put("samples", histogram.getCount());
+        level.put("seconds", seconds);
+        level.put("roundsPerSecond", roundsPerSecond);
+        ObjectNode latency = level.putObject("latencyMicros");
+        latency.put("mean", micros(histogram.getMean()));
+        latency.put("p50", micros(histogram.getPercentile(50)));
+        latency.put("p90", micros(histogram.getPercentile(90)));
+        latency.put("p99", micros(histogram.getPercentile(99)));
+        latency.put("p999", micros(histogram.getPercentile(99.9)));
+        latency.put("max", micros(histogram.getMax()));
+        return level;
+    }
+
+    /**
+     * Confronta i risultati con quelli di riferimento, livello per livello.
+     * I livelli presenti in uno solo dei due file vengono ignorati.
+     *
+     * @param baseline  I risultati di riferimento
+     * @param current   I risultati dell'esecuzione corrente
+     * @param threshold Peggioramento percentuale tollerato
+     * @return La descrizione di ogni valore peggiorato oltre la soglia, vuota se non ce ne sono
+     */
+    static List<String> compare(JsonNode baseline, JsonNode current, double threshold) {
+        List<String> regressions = new ArrayList<>();
+        double tolerance = threshold / 100.0;
+        for (JsonNode level : current.path("levels")) {
+            int pairs = level.path("pairs").asInt();
+            JsonNode reference = null;
+            for (JsonNode candidate : baseline.path("levels")) {
+                if (candidate.path("pairs").asInt() == pairs) {
+                    reference = candidate;
+                }
+            }
+            if (reference == null) {
+                continue;
+            }
+
+            for (String percentile : COMPARED_LATENCIES) {
+                double before = reference.path("latencyMicros").path(percentile).asDouble();
+                double after = level.path("latencyMicros").path(percentile).asDouble();
+                if (before > 0 && after > before * (1 + tolerance)) {
+                    regressions.add(String.format("%d coppie, latenza %s: %.1f us -> %.1f us (%+.1f%%)",
+                            pairs, percentile, before, after, (after / before - 1) * 100));
+                }
+            }
+            double before = reference.path("roundsPerSecond").asDouble();
+            double after = level.path("roundsPerSecond").asDouble();
+            if (before > 0 && after < before * (1 - tolerance)) {
+                regressions.add(String.format("%d coppie, manche/s: %.0f -> %.0f (%+.1f%%)",
+                        pairs, before, after, (after / before - 1) * 100));
+            }
+        }
+        return regressions;
+    }
+
+    private static void closeAll(List<HarnessPlayer> players) {
+        for (HarnessPlayer player : players) {
+            player.stopped = true;
+            player.client.close();
+        }
+    }
+
+    private static double micros(double nanos) {
+        return nanos / 1_000.0;
+    }
+
+    /**
+     * Client dell'harness: gioca manche dopo manche senza pause, inviando la mossa appena
+     * la manche inizia e dichiarandosi pronto appena arriva il risultato.
+     */
+    private final class HarnessPlayer implements ClientListener {
+        private final Client client;
+        private final LatencyHistogram histogram;
+        private final AtomicBoolean measuring;
+        private final CountDownLatch warmedUp;
+        private final CountDownLatch done;
+        private volatile long moveSent;
+        private volatile boolean stopped;
+        private int results;
+        private int measured;
+
+        HarnessPlayer(String username, int port, LatencyHistogram histogram, AtomicBoolean measuring,
+                      CountDownLatch warmedUp, CountDownLatch done) {
+            this.client = new Client(username, Client.DEFAULT_HOST, port);
+            this.histogram = histogram;
+            this.measuring = measuring;
+            this.warmedUp = warmedUp;
+            this.done = done;
+            client.addListener(this);
+        }
+
+        @Override
+        public void onGameStart(String opponentName) {
+            if (stopped) {
+                return;
+            }
+            try {
+                GameMoves move = GameMoves.fromOrdinal(ThreadLocalRandom.current().nextInt(GameMoves.values().length));
+                moveSent = System.nanoTime();
+                client.sendMove(move);
+            } catch (Exception e) {
+                if (!stopped) {
+                    System.err.println("Invio della mossa fallito: " + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public void onResult(GameResult result) {
+            long latency = System.nanoTime() - moveSent;
+            if (++results == warmup) {
+                warmedUp.countDown();
+            }
+            // Chi finisce il riscaldamento prima degli altri continua a giocare,
+            // ma registra solo dall'inizio della misura
+            if (measuring.get() && measured < rounds) {
+                histogram.record(latency);
+                if (++measured == rounds) {
+                    done.countDown();
+                }
+            }
+
+            // Continua a giocare anche dopo aver finito, perché l'avversario potrebbe non aver finito
+            if (stopped) {
+                return;
+            }
+            try {
+                client.readyForNextRound();
+            } catch (Exception e) {
+                if (!stopped) {
+                    System.err.println("Invio di READY fallito: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
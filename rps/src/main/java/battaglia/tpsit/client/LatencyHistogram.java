@@ -0,0 +1,153 @@
+package battaglia.tpsit.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Istogramma delle latenze con bucket log-lineari, sul modello di HdrHistogram.
+ * <p>
+ * Ogni intervallo tra due potenze di due consecutive è diviso in {@value #HALF_BUCKETS} bucket
+ * della stessa ampiezza, quindi l'errore relativo sui percentili resta sotto 1/{@value #HALF_BUCKETS},
+ * circa lo 0,8%, per qualsiasi valore, dai nanosecondi alle ore, con una tabella di dimensione fissa.
+ * La registrazione è un incremento atomico e può essere fatta contemporaneamente da più thread
+ * senza lock.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 8;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int HALF_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * HALF_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Registra una latenza.
+     *
+     * @param nanos La latenza in nanosecondi; i valori negativi vengono contati come zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Aggiunge a questo istogramma tutti i valori registrati in un altro.
+     *
+     * @param other L'istogramma da aggiungere
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucket = other.counts.get(i);
+            if (bucket != 0) {
+                counts.addAndGet(i, bucket);
+            }
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        max.accumulate(other.max.get());
+    }
+
+    /**
+     * Restituisce il numero di valori registrati.
+     *
+     * @return Il numero di valori
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Restituisce la media dei valori registrati.
+     *
+     * @return La media in nanosecondi, 0 se l'istogramma è vuoto
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Restituisce il valore massimo registrato.
+     *
+     * @return Il massimo in nanosecondi
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Restituisce il percentile richiesto, approssimato per eccesso al limite superiore del suo bucket.
+     *
+     * @param percentile Il percentile, tra 0 e 100
+     * @return Il valore in nanosecondi, 0 se l'istogramma è vuoto
+     */
+    public long getPercentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Restituisce una riga con i percentili principali in millisecondi.
+     *
+     * @return Il riepilogo dell'istogramma
+     */
+    public String summary() {
+        return String.format("n=%d media %.2f ms, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms",
+                getCount(), millis(getMean()), millis(getPercentile(50)), millis(getPercentile(90)),
+                millis(getPercentile(99)), millis(getPercentile(99.9)), millis(getMax()));
+    }
+
+    /**
+     * Calcola il bucket di un valore: sotto {@value #SUB_BUCKETS} il bucket è il valore stesso,
+     * oltre si conservano i {@value #SUB_BITS} bit più significativi.
+     *
+     * @param value Il valore, non negativo
+     * @return L'indice del bucket
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * HALF_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Calcola il valore più alto che ricade in un bucket.
+     *
+     * @param index L'indice del bucket
+     * @return Il limite superiore del bucket
+     */
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF_BUCKETS - 1;
+        long subBucket = index - (long) shift * HALF_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,421 @@
+package battaglia.tpsit.client;
+
+import battaglia.tpsit.common.GameMoves;
+import battaglia.tpsit.common.GameResult;
+import battaglia.tpsit.server.Server;
+import battaglia.tpsit.server.ServerConfig;
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generatore di carico: simula molti giocatori contemporanei che parlano con il server usando
+ * il protocollo reale (handshake, MOVE, READY) tramite il {@link Client} senza interfaccia grafica.
+ * <p>
+ * I giocatori si connettono al ritmo richiesto; ognuno, a ogni inizio manche, attende un tempo di
+ * riflessione casuale, sceglie una mossa secondo la distribuzione configurata e, ricevuto il risultato,
+ * attende di nuovo prima di dichiararsi pronto per la manche successiva. Terminata la fase di connessione
+ * inizia la misura, alla fine della quale vengono stampate le connessioni al secondo, le manche al secondo
+ * e i percentili della latenza tra l'invio della mossa e l'arrivo del risultato.
+ * <p>
+ * Opzioni, nel formato {@code --chiave=valore}:
+ * <ul>
+ *     <li>{@code --players=N}: Giocatori simulati (predefinito 1000)</li>
+ *     <li>{@code --rate=N}: Nuove connessioni al secondo durante la fase di connessione (predefinito 200)</li>
+ *     <li>{@code --duration=S}: Secondi di misura dopo la fase di connessione (predefinito 30)</li>
+ *     <li>{@code --think=MS} o {@code --think=MIN-MAX}: Tempo di riflessione in millisecondi (predefinito 100-500)</li>
+ *     <li>{@code --moves=uniform} o {@code --moves=P1,P2,P3,P4,P5}: Pesi delle mosse, nell'ordine di {@link GameMoves}</li>
+ *     <li>{@code --host=H}, {@code --port=N}: Server da caricare (predefinito {@code localhost:12345})</li>
+ *     <li>{@code --embedded}: Avvia il server nello stesso processo su una porta libera;
+ *     le altre opzioni vengono passate a {@link ServerConfig#fromArgs(String[])}</li>
+ *     <li>{@code --log=LIVELLO}: Livello dei log dell'applicazione (predefinito WARN)</li>
+ * </ul>
+ */
+public final class LoadGenerator {
+    private static final long REPORT_INTERVAL_MILLIS = 1000;
+    private static final long STARTUP_TIMEOUT_SECONDS = 10;
+
+    private final int players;
+    private final int connectRate;
+    private final long durationSeconds;
+    private final long thinkMinMillis;
+    private final long thinkMaxMillis;
+    private final double[] moveWeights;
+    private final String host;
+    private final int port;
+
+    private final List<SimulatedPlayer> simulated = new ArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private final LatencyHistogram handshakeLatency = new LatencyHistogram();
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final AtomicInteger connectedPlayers = new AtomicInteger();
+    private final LongAdder results = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder disconnections = new LongAdder();
+    private volatile boolean measuring;
+    private volatile boolean stopping;
+
+    /**
+     * Costruttore del generatore di carico.
+     *
+     * @param players         Giocatori simulati
+     * @param connectRate     Nuove connessioni al secondo
+     * @param durationSeconds Secondi di misura
+     * @param thinkMinMillis  Tempo di riflessione minimo in millisecondi
+     * @param thinkMaxMillis  Tempo di riflessione massimo in millisecondi
+     * @param moveWeights     Pesi delle mosse, nell'ordine di {@link GameMoves}
+     * @param host            Indirizzo del server
+     * @param port            Porta del server
+     */
+    public LoadGenerator(int players, int connectRate, long durationSeconds, long thinkMinMillis,
+                         long thinkMaxMillis, double[] moveWeights, String host, int port) {
+        this.players = players;
+        this.connectRate = Math.max(1, connectRate);
+        this.durationSeconds = durationSeconds;
+        this.thinkMinMillis = thinkMinMillis;
+        this.thinkMaxMillis = Math.max(thinkMinMillis, thinkMaxMillis);
+        this.moveWeights = cumulative(moveWeights);
+        this.host = host;
+        this.port = port;
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "rps-loadgen");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Punto di ingresso del generatore di carico.
+     *
+     * @param args Opzioni nel formato {@code --chiave=valore}, descritte nella documentazione della classe
+     * @throws InterruptedException Se il thread principale viene interrotto
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int players = 1000;
+        int rate = 200;
+        long duration = 30;
+        long thinkMin = 100;
+        long thinkMax = 500;
+        double[] weights = {1, 1, 1, 1, 1};
+        String host = Client.DEFAULT_HOST;
+        int port = Client.DEFAULT_PORT;
+        boolean embedded = false;
+        String logLevel = "WARN";
+        List<String> serverArgs = new ArrayList<>();
+
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String name = separator < 0 ? arg : arg.substring(0, separator);
+            String value = separator < 0 ? "" : arg.substring(separator + 1);
+            switch (name) {
+                case "--loadgen":
+                    break;
+                case "--players":
+                    players = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    rate = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    duration = Long.parseLong(value);
+                    break;
+                case "--think":
+                    int dash = value.indexOf('-');
+                    thinkMin = Long.parseLong(dash < 0 ? value : value.substring(0, dash));
+                    thinkMax = dash < 0 ? thinkMin : Long.parseLong(value.substring(dash + 1));
+                    break;
+                case "--moves":
+                    weights = parseWeights(value);
+                    break;
+                case "--host":
+                    host = value;
+                    break;
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--embedded":
+                    embedded = true;
+                    break;
+                case "--log":
+                    logLevel = value;
+                    break;
+                default:
+                    serverArgs.add(arg);
+            }
+        }
+
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("battaglia.tpsit"))
+                .setLevel(Level.toLevel(logLevel, Level.WARN));
+
+        Server server = null;
+        if (embedded) {
+            ServerConfig config = ServerConfig.fromArgs(serverArgs.toArray(new String[0]));
+            config.setPort(0);
+            server = new Server(config);
+            Thread serverThread = new Thread(server::start, "rps-loadgen-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+            if (!server.awaitStarted(STARTUP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Il server incorporato non si è avviato");
+                return;
+            }
+            host = Client.DEFAULT_HOST;
+            port = server.getLocalPort();
+            System.out.printf("Server incorporato (%s) in ascolto sulla porta %d%n", config.getEngine(), port);
+        } else if (!serverArgs.isEmpty()) {
+            System.err.println("Opzioni ignorate senza --embedded: " + serverArgs);
+        }
+
+        LoadGenerator generator = new LoadGenerator(players, rate, duration, thinkMin, thinkMax, weights, host, port);
+        try {
+            generator.run();
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * Esegue la fase di connessione e quella di misura, poi chiude tutti i client e stampa il rapporto.
+     *
+     * @throws InterruptedException Se il thread viene interrotto
+     */
+    public void run() throws InterruptedException {
+        System.out.printf("Avvio di %d giocatori verso %s:%d, %d connessioni/s, riflessione %d-%d ms%n",
+                players, host, port, connectRate, thinkMinMillis, thinkMaxMillis);
+
+        // Fase di connessione: i giocatori partono a ritmo costante, non tutti insieme
+        long rampStart = System.nanoTime();
+        long nextReport = rampStart + TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL_MILLIS);
+        for (int i = 0; i < players; i++) {
+            long due = rampStart + i * TimeUnit.SECONDS.toNanos(1) / connectRate;
+            sleepUntil(due);
+            SimulatedPlayer player = new SimulatedPlayer(this, "bot" + i, host, port);
+            simulated.add(player);
+            player.start();
+            if (System.nanoTime() >= nextReport) {
+                System.out.printf("  connessi %d/%d%n", connectedPlayers.get(), players);
+                nextReport += TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL_MILLIS);
+            }
+        }
+
+        // Attende gli handshake ancora in corso, senza bloccarsi su quelli falliti
+        long handshakeDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STARTUP_TIMEOUT_SECONDS);
+        while (connectedPlayers.get() + errors.intValue() + disconnections.intValue() < players
+                && System.nanoTime() < handshakeDeadline) {
+            Thread.sleep(10);
+        }
+        double rampSeconds = (System.nanoTime() - rampStart) / 1e9;
+        int connected = connectedPlayers.get();
+
+        // Fase di misura
+        long resultsBefore = results.sum();
+        measuring = true;
+        long measureStart = System.nanoTime();
+        long lastResults = resultsBefore;
+        for (long second = 1; second <= durationSeconds; second++) {
+            sleepUntil(measureStart + TimeUnit.SECONDS.toNanos(second));
+            long now = results.sum();
+            System.out.printf("  t=%ds manche/s %.0f, connessi %d, errori %d, disconnessioni %d%n",
+                    second, (now - lastResults) / 2.0, connectedPlayers.get(), errors.sum(), disconnections.sum());
+            lastResults = now;
+        }
+        measuring = false;
+        double measureSeconds = (System.nanoTime() - measureStart) / 1e9;
+        long rounds = (results.sum() - resultsBefore) / 2;
+
+        stopping = true;
+        scheduler.shutdownNow();
+        for (SimulatedPlayer player : simulated) {
+            player.close();
+        }
+
+        System.out.printf("Connessioni: %d/%d in %.2f s, %.1f connessioni/s%n",
+                connected, players, rampSeconds, connected / rampSeconds);
+        System.out.println("Latenza handshake: " + handshakeLatency.summary());
+        System.out.printf("Manche: %d in %.2f s, %.1f manche/s%n", rounds, measureSeconds, rounds / measureSeconds);
+        System.out.println("Latenza mossa-risultato: " + moveLatency.summary());
+        System.out.printf("Errori dal server: %d, disconnessioni: %d%n", errors.sum(), disconnections.sum());
+    }
+
+    /**
+     * Sceglie una mossa secondo la distribuzione configurata.
+     *
+     * @return La mossa scelta
+     */
+    GameMoves pickMove() {
+        double r = ThreadLocalRandom.current().nextDouble() * moveWeights[moveWeights.length - 1];
+        for (int i = 0; i < moveWeights.length; i++) {
+            if (r < moveWeights[i]) {
+                return GameMoves.fromOrdinal(i);
+            }
+        }
+        return GameMoves.fromOrdinal(moveWeights.length - 1);
+    }
+
+    /**
+     * Esegue un'azione di un giocatore dopo un tempo di riflessione casuale.
+     *
+     * @param action L'azione da eseguire
+     */
+    void afterThinking(Runnable action) {
+        if (stopping) {
+            return;
+        }
+        long delay = thinkMinMillis == thinkMaxMillis
+                ? thinkMinMillis
+                : ThreadLocalRandom.current().nextLong(thinkMinMillis, thinkMaxMillis + 1);
+        try {
+            scheduler.schedule(action, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Il generatore si sta fermando
+        }
+    }
+
+    void recordHandshake(long nanos) {
+        connectedPlayers.incrementAndGet();
+        handshakeLatency.record(nanos);
+    }
+
+    void recordResult(long moveNanos) {
+        results.increment();
+        if (measuring && moveNanos >= 0) {
+            moveLatency.record(moveNanos);
+        }
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    void recordDisconnection() {
+        if (!stopping) {
+            connectedPlayers.decrementAndGet();
+            disconnections.increment();
+        }
+    }
+
+    boolean isStopping() {
+        return stopping;
+    }
+
+    private static double[] parseWeights(String value) {
+        if (value.equalsIgnoreCase("uniform")) {
+            return new double[] {1, 1, 1, 1, 1};
+        }
+        String[] parts = value.split(",");
+        if (parts.length != GameMoves.values().length) {
+            throw new IllegalArgumentException("Servono " + GameMoves.values().length + " pesi per --moves");
+        }
+        double[] weights = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            weights[i] = Double.parseDouble(parts[i].trim());
+        }
+        return weights;
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] cumulative = new double[weights.length];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += Math.max(0, weights[i]);
+            cumulative[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Almeno un peso delle mosse deve essere positivo");
+        }
+        return cumulative;
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    /**
+     * Giocatore simulato: reagisce agli eventi del proprio {@link Client} giocando manche dopo manche.
+     */
+    private static final class SimulatedPlayer implements ClientListener {
+        private final LoadGenerator generator;
+        private final Client client;
+        private long connectStarted;
+        private volatile long moveSent;
+
+        SimulatedPlayer(LoadGenerator generator, String username, String host, int port) {
+            this.generator = generator;
+            this.client = new Client(username, host, port);
+            this.client.addListener(this);
+        }
+
+        void start() {
+            connectStarted = System.nanoTime();
+            client.connect().exceptionally(e -> {
+                generator.recordError();
+                return null;
+            });
+        }
+
+        void close() {
+            client.close();
+        }
+
+        @Override
+        public void onConnected() {
+            generator.recordHandshake(System.nanoTime() - connectStarted);
+        }
+
+        @Override
+        public void onGameStart(String opponentName) {
+            moveSent = -1;
+            generator.afterThinking(() -> {
+                try {
+                    moveSent = System.nanoTime();
+                    client.sendMove(generator.pickMove());
+                } catch (Exception e) {
+                    if (!generator.isStopping()) {
+                        generator.recordError();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onResult(GameResult result) {
+            // Un risultato a tavolino può arrivare senza che la mossa sia stata inviata
+            long sent = moveSent;
+            generator.recordResult(sent > 0 ? System.nanoTime() - sent : -1);
+            generator.afterThinking(() -> {
+                try {
+                    client.readyForNextRound();
+                } catch (Exception e) {
+                    if (!generator.isStopping()) {
+                        generator.recordError();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onError(String message) {
+            generator.recordError();
+        }
+
+        @Override
+        public void onDisconnected(String reason) {
+            generator.recordDisconnection();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package battaglia.tpsit.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache dei ticket di ripresa ricevuti dai server.
+ * È condivisa fra tutte le istanze di {@link Client} del processo, così una nuova connessione
+ * dopo una disconnessione può riprendere la sessione senza ripetere lo scambio di chiavi.
+ */
+final class SessionTicketCache {
+    private static final Map<String, Entry> TICKETS = new ConcurrentHashMap<>();
+
+    private SessionTicketCache() {
+    }
+
+    /**
+     * Memorizza il ticket ricevuto per un utente su un server.
+     *
+     * @param server          L'indirizzo del server nel formato {@code host:porta}
+     * @param username        Il nome utente
+     * @param ticket          Il ticket cifrato dal server
+     * @param secret          Il segreto di sessione associato al ticket
+     * @param lifetimeSeconds La validità del ticket in secondi
+     */
+    static void store(String server, String username, String ticket, byte[] secret, long lifetimeSeconds) {
+        long expiry = System.currentTimeMillis() + lifetimeSeconds * 1000L;
+        TICKETS.put(server + "/" + username, new Entry(ticket, secret, expiry));
+    }
+
+    /**
+     * Restituisce il ticket ancora valido per un utente su un server.
+     *
+     * @param server   L'indirizzo del server nel formato {@code host:porta}
+     * @param username Il nome utente
+     * @return Il ticket, o {@code null} se assente o scaduto
+     */
+    static Entry find(String server, String username) {
+        String cacheKey = server + "/" + username;
+        Entry entry = TICKETS.get(cacheKey);
+        if (entry != null && System.currentTimeMillis() >= entry.expiry) {
+            TICKETS.remove(cacheKey, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Rimuove il ticket di un utente, ad esempio perché il server lo ha rifiutato.
+     *
+     * @param server   L'indirizzo del server nel formato {@code host:porta}
+     * @param username Il nome utente
+     */
+    static void remove(String server, String username) {
+        TICKETS.remove(server + "/" + username);
+    }
+
+    /**
+     * Ticket memorizzato con il relativo segreto di sessione.
+     */
+    static final class Entry {
+        private final String ticket;
+        private final byte[] secret;
+        private final long expiry;
+
+        private Entry(String ticket, byte[] secret, long expiry) {
+            this.ticket = ticket;
+            this.secret = secret;
+            this.expiry = expiry;
+        }
+
+        /**
+         * Restituisce il ticket cifrato dal server.
+         *
+         * @return Il ticket
+         */
+        String getTicket() {
+            return ticket;
+        }
+
+        /**
+         * Restituisce il segreto di sessione associato al ticket.
+         *
+         * @return Il segreto di sessione
+         */
+        byte[] getSecret() {
+            return secret;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package battaglia.tpsit.common;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codec binario compatto, negoziato con la funzionalità {@link ProtocolFeatures#BINARY}.
+ * <p>
+ * Formato del frame:
+ * <pre>
+ * int32  lunghezza del corpo
+ * byte   tipo del messaggio (ordinale di {@link MessageType})
+ * byte   maschera dei campi presenti
+ * per ogni campo presente, nell'ordine username, key, data, features:
+ *   uint16 lunghezza, seguita dai byte del campo
+ * </pre>
+ * I dati cifrati impostati con {@link Message#setPayload(byte[])} viaggiano come byte grezzi,
+ * senza Base64; gli altri campi sono stringhe UTF-8. Poiché il tipo è trasmesso come ordinale,
+ * i nuovi valori di {@link MessageType} vanno aggiunti sempre in fondo all'enumerazione.
+ */
+public class BinaryCodec implements MessageCodec {
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_FIELD_SIZE = 0xFFFF;
+
+    private static final int FLAG_USERNAME = 1;
+    private static final int FLAG_KEY = 1 << 1;
+    private static final int FLAG_DATA = 1 << 2;
+    private static final int FLAG_PAYLOAD = 1 << 3;
+    private static final int FLAG_FEATURES = 1 << 4;
+
+    @Override
+    public byte[] encode(Message message) throws IOException {
+        byte[] username = utf8(message.getUsername());
+        byte[] key = utf8(message.getKey());
+        byte[] data = message.hasPayload() ? message.getPayload() : utf8(message.getData());
+        byte[] features = utf8(message.getFeatures());
+
+        int flags = 0;
+        int bodyLength = 2;
+        if (username != null) {
+            flags |= FLAG_USERNAME;
+            bodyLength += 2 + username.length;
+        }
+        if (key != null) {
+            flags |= FLAG_KEY;
+            bodyLength += 2 + key.length;
+        }
+        if (data != null) {
+            flags |= message.hasPayload() ? FLAG_PAYLOAD : FLAG_DATA;
+            bodyLength += 2 + data.length;
+        }
+        if (features != null) {
+            flags |= FLAG_FEATURES;
+            bodyLength += 2 + features.length;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + bodyLength);
+        frame.putInt(bodyLength);
+        frame.put((byte) message.getType().ordinal());
+        frame.put((byte) flags);
+        putField(frame, username);
+        putField(frame, key);
+        putField(frame, data);
+        putField(frame, features);
+        return frame.array();
+    }
+
+    @Override
+    public Message read(InputStream input) throws IOException {
+        DataInputStream dataInput = new DataInputStream(input);
+        int first = dataInput.read();
+        if (first < 0) {
+            return null; // Stream terminato
+        }
+
+        int bodyLength = (first << 24) | (dataInput.readUnsignedByte() << 16)
+                | (dataInput.readUnsignedByte() << 8) | dataInput.readUnsignedByte();
+        checkLength(bodyLength);
+
+        byte[] body = new byte[bodyLength];
+        try {
+            dataInput.readFully(body);
+        } catch (EOFException e) {
+            throw new IOException("Frame binario incompleto", e);
+        }
+        return decodeBody(ByteBuffer.wrap(body));
+    }
+
+    @Override
+    public Message decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+
+        int start = buffer.position();
+        int bodyLength = buffer.getInt(start);
+        checkLength(bodyLength);
+        if (buffer.remaining() < HEADER_SIZE + bodyLength) {
+            return null;
+        }
+
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + HEADER_SIZE);
+        body.limit(start + HEADER_SIZE + bodyLength);
+        Message message = decodeBody(body);
+        buffer.position(start + HEADER_SIZE + bodyLength);
+        return message;
+    }
+
+    /**
+     * Decodifica il corpo di un frame.
+     *
+     * @param body Il buffer che contiene esattamente il corpo del frame
+     * @return Il messaggio decodificato
+     * @throws IOException Se il corpo non è valido
+     */
+    private static Message decodeBody(ByteBuffer body) throws IOException {
+        try {
+            int typeIndex = body.get() & 0xFF;
+            if (typeIndex >= TYPES.length) {
+                throw new IOException("Tipo di messaggio sconosciuto: " + typeIndex);
+            }
+            int flags = body.get() & 0xFF;
+
+            Message message = new Message();
+            message.setType(TYPES[typeIndex]);
+            if ((flags & FLAG_USERNAME) != 0) {
+                message.setUsername(string(getField(body)));
+            }
+            if ((flags & FLAG_KEY) != 0) {
+                message.setKey(string(getField(body)));
+            }
+            if ((flags & FLAG_DATA) != 0) {
+                message.setData(string(getField(body)));
+            } else if ((flags & FLAG_PAYLOAD) != 0) {
+                message.setPayload(getField(body));
+            }
+            if ((flags & FLAG_FEATURES) != 0) {
+                message.setFeatures(string(getField(body)));
+            }
+            return message;
+        } catch (RuntimeException e) {
+            throw new IOException("Frame binario non valido", e);
+        }
+    }
+
+    /**
+     * Verifica che la lunghezza dichiarata di un frame sia accettabile.
+     *
+     * @param bodyLength La lunghezza del corpo
+     * @throws IOException Se la lunghezza non è valida
+     */
+    private static void checkLength(int bodyLength) throws IOException {
+        if (bodyLength < 2 || bodyLength > MAX_FRAME_SIZE) {
+            throw new IOException("Lunghezza del frame binario non valida: " + bodyLength);
+        }
+    }
+
+    /**
+     * Scrive un campo preceduto dalla sua lunghezza, se presente.
+     *
+     * @param frame Il buffer del frame
+     * @param field I byte del campo, o {@code null}
+     * @throws IOException Se il campo supera la dimensione massima
+     */
+    private static void putField(ByteBuffer frame, byte[] field) throws IOException {
+        if (field == null) {
+            return;
+        }
+        if (field.length > MAX_FIELD_SIZE) {
+            throw new IOException("Campo troppo lungo per il codec binario");
+        }
+        frame.putShort((short) field.length);
+        frame.put(field);
+    }
+
+    /**
+     * Legge un campo preceduto dalla sua lunghezza.
+     *
+     * @param body Il buffer del corpo
+     * @return I byte del campo
+     */
+    private static byte[] getField(ByteBuffer body) {
+        int length = body.getShort() & 0xFFFF;
+        byte[] field = new byte[length];
+        body.get(field);
+        return field;
+    }
+
+    /**
+     * Converte una stringa in byte UTF-8.
+     *
+     * @param value La stringa, o {@code null}
+     * @return I byte UTF-8, o {@code null}
+     */
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Converte dei byte UTF-8 in stringa.
+     *
+     * @param bytes I byte UTF-8
+     * @return La stringa corrispondente
+     */
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,224 @@
+package battaglia.tpsit.common;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * Contesto crittografico di una singola connessione.
+ * <p>
+ * A differenza dei metodi statici di {@link CryptoUtils}, che creano un nuovo {@link Cipher}
+ * a ogni messaggio, il contesto inizializza una sola volta i cifrari di cifratura e decifratura
+ * e li riutilizza. I metodi sono thread-safe: cifratura e decifratura sono serializzate
+ * separatamente, così un invio da un altro thread non blocca la lettura.
+ * <p>
+ * In modalità autenticata (funzionalità {@link ProtocolFeatures#GCM}) usa AES-GCM con nonce
+ * a contatore: il nonce di 12 byte è formato da 4 byte che identificano la direzione
+ * (client o server, così i due lati non riusano mai lo stesso nonce con la stessa chiave)
+ * e da un contatore di 8 byte, trasmesso in chiaro davanti al testo cifrato. In ricezione
+ * il contatore deve crescere strettamente, il che impedisce il replay dei messaggi.
+ * In modalità legacy mantiene la trasformazione {@code "AES"} del protocollo originale.
+ */
+public class CryptoContext {
+    private static final String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String LEGACY_TRANSFORMATION = "AES";
+    private static final int GCM_TAG_BITS = 128;
+    private static final int NONCE_SIZE = 12;
+    private static final int COUNTER_SIZE = 8;
+    private static final int CLIENT_DIRECTION = 0x52505343; // "RPSC"
+    private static final int SERVER_DIRECTION = 0x52505353; // "RPSS"
+
+    private final SecretKey key;
+    private final boolean authenticated;
+    private final int localDirection;
+    private final int remoteDirection;
+    private final Cipher encryptCipher;
+    private final Cipher decryptCipher;
+    private long sendCounter;
+    private long lastReceivedCounter = -1;
+
+    /**
+     * Costruttore del contesto.
+     *
+     * @param key             La chiave AES di sessione
+     * @param authenticated   {@code true} per AES-GCM, {@code false} per la modalità legacy
+     * @param localDirection  Identificativo della direzione dei messaggi inviati
+     * @param remoteDirection Identificativo della direzione dei messaggi ricevuti
+     * @throws GeneralSecurityException Se i cifrari non possono essere inizializzati
+     */
+    private CryptoContext(SecretKey key, boolean authenticated, int localDirection, int remoteDirection)
+            throws GeneralSecurityException {
+        this.key = key;
+        this.authenticated = authenticated;
+        this.localDirection = localDirection;
+        this.remoteDirection = remoteDirection;
+
+        String transformation = authenticated ? GCM_TRANSFORMATION : LEGACY_TRANSFORMATION;
+        this.encryptCipher = Cipher.getInstance(transformation);
+        this.decryptCipher = Cipher.getInstance(transformation);
+        if (!authenticated) {
+            // In modalità legacy i cifrari restano inizializzati e vengono riusati dopo ogni doFinal
+            encryptCipher.init(Cipher.ENCRYPT_MODE, key);
+            decryptCipher.init(Cipher.DECRYPT_MODE, key);
+        }
+    }
+
+    /**
+     * Crea il contesto per il lato client di una connessione.
+     *
+     * @param key           La chiave AES di sessione
+     * @param authenticated {@code true} se è stata negoziata la modalità AES-GCM
+     * @return Il contesto crittografico
+     * @throws GeneralSecurityException Se i cifrari non possono essere inizializzati
+     */
+    public static CryptoContext forClient(SecretKey key, boolean authenticated) throws GeneralSecurityException {
+        return new CryptoContext(key, authenticated, CLIENT_DIRECTION, SERVER_DIRECTION);
+    }
+
+    /**
+     * Crea il contesto per il lato server di una connessione.
+     *
+     * @param key           La chiave AES di sessione
+     * @param authenticated {@code true} se è stata negoziata la modalità AES-GCM
+     * @return Il contesto crittografico
+     * @throws GeneralSecurityException Se i cifrari non possono essere inizializzati
+     */
+    public static CryptoContext forServer(SecretKey key, boolean authenticated) throws GeneralSecurityException {
+        return new CryptoContext(key, authenticated, SERVER_DIRECTION, CLIENT_DIRECTION);
+    }
+
+    /**
+     * Cripta dei byte.
+     *
+     * @param plain I byte in chiaro
+     * @return I byte cifrati (in modalità GCM preceduti dal contatore del nonce)
+     * @throws GeneralSecurityException Se si verifica un errore nella crittografia
+     */
+    public byte[] encrypt(byte[] plain) throws GeneralSecurityException {
+        ByteBuffer output = ByteBuffer.allocate(encryptedSize(plain.length));
+        encrypt(ByteBuffer.wrap(plain), output);
+        return output.position() == output.capacity() ? output.array() : copyOf(output);
+    }
+
+    /**
+     * Cripta il contenuto di un buffer scrivendo il risultato in un altro buffer.
+     *
+     * @param plain  Il buffer con i byte in chiaro, consumato fino al limite
+     * @param output Il buffer di destinazione, con spazio almeno pari a {@link #encryptedSize(int)}
+     * @return Il numero di byte scritti
+     * @throws GeneralSecurityException Se si verifica un errore nella crittografia
+     */
+    public int encrypt(ByteBuffer plain, ByteBuffer output) throws GeneralSecurityException {
+        synchronized (encryptCipher) {
+            if (!authenticated) {
+                return encryptCipher.doFinal(plain, output);
+            }
+
+            long counter = sendCounter++;
+            encryptCipher.init(Cipher.ENCRYPT_MODE, key, nonce(localDirection, counter));
+            output.putLong(counter);
+            return COUNTER_SIZE + encryptCipher.doFinal(plain, output);
+        }
+    }
+
+    /**
+     * Decripta dei byte.
+     *
+     * @param encrypted I byte cifrati
+     * @return I byte in chiaro
+     * @throws GeneralSecurityException Se i dati non sono autentici o non possono essere decifrati
+     */
+    public byte[] decrypt(byte[] encrypted) throws GeneralSecurityException {
+        ByteBuffer output = ByteBuffer.allocate(encrypted.length);
+        decrypt(ByteBuffer.wrap(encrypted), output);
+        return copyOf(output);
+    }
+
+    /**
+     * Decripta il contenuto di un buffer scrivendo il risultato in un altro buffer.
+     *
+     * @param encrypted Il buffer con i byte cifrati, consumato fino al limite
+     * @param output    Il buffer di destinazione, con spazio almeno pari ai byte cifrati
+     * @return Il numero di byte in chiaro scritti
+     * @throws GeneralSecurityException Se i dati non sono autentici o non possono essere decifrati
+     */
+    public int decrypt(ByteBuffer encrypted, ByteBuffer output) throws GeneralSecurityException {
+        synchronized (decryptCipher) {
+            if (!authenticated) {
+                return decryptCipher.doFinal(encrypted, output);
+            }
+
+            if (encrypted.remaining() < COUNTER_SIZE + GCM_TAG_BITS / 8) {
+                throw new GeneralSecurityException("Messaggio cifrato troppo corto");
+            }
+            long counter = encrypted.getLong();
+            if (counter <= lastReceivedCounter) {
+                throw new GeneralSecurityException("Contatore del nonce non valido: possibile replay");
+            }
+
+            decryptCipher.init(Cipher.DECRYPT_MODE, key, nonce(remoteDirection, counter));
+            int written = decryptCipher.doFinal(encrypted, output);
+            lastReceivedCounter = counter;
+            return written;
+        }
+    }
+
+    /**
+     * Calcola la dimensione massima del testo cifrato per un certo numero di byte in chiaro.
+     *
+     * @param plainLength Il numero di byte in chiaro
+     * @return Il numero massimo di byte cifrati
+     */
+    public int encryptedSize(int plainLength) {
+        if (authenticated) {
+            return COUNTER_SIZE + plainLength + GCM_TAG_BITS / 8;
+        }
+        return (plainLength / 16 + 1) * 16; // Padding PKCS5 a blocchi di 16 byte
+    }
+
+    /**
+     * Indica se il contesto usa la cifratura autenticata AES-GCM.
+     *
+     * @return {@code true} in modalità AES-GCM
+     */
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    /**
+     * Restituisce la chiave AES di sessione.
+     *
+     * @return La chiave AES
+     */
+    public SecretKey getKey() {
+        return key;
+    }
+
+    /**
+     * Costruisce il nonce GCM per una direzione e un contatore.
+     *
+     * @param direction L'identificativo della direzione
+     * @param counter   Il contatore del messaggio
+     * @return I parametri GCM
+     */
+    private static GCMParameterSpec nonce(int direction, long counter) {
+        byte[] iv = new byte[NONCE_SIZE];
+        ByteBuffer.wrap(iv).putInt(direction).putLong(counter);
+        return new GCMParameterSpec(GCM_TAG_BITS, iv);
+    }
+
+    /**
+     * Copia i byte scritti in un buffer in un nuovo array.
+     *
+     * @param buffer Il buffer in modalità scrittura
+     * @return I byte scritti
+     */
+    private static byte[] copyOf(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+}
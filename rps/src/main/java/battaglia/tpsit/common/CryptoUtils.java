@@ -1,7 +1,9 @@
 package battaglia.tpsit.common;
 
 import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.security.*;
@@ -13,11 +15,18 @@ import java.util.Base64;
  * Classe di utilità per la gestione della crittografia.
  * Fornisce metodi per generare chiavi RSA e AES, criptare e decriptare dati,
  * e convertire chiavi in formato Base64.
+ * Per cifrare i messaggi di una connessione senza ricreare i cifrari a ogni chiamata
+ * vedi {@link CryptoContext}.
  */
 public class CryptoUtils {
 
     private static final String RSA_ALGORITHM = "RSA";
     private static final String AES_ALGORITHM = "AES";
+    private static final String X25519_ALGORITHM = "X25519";
+    private static final String KEY_DERIVATION_DIGEST = "SHA-256";
+    private static final String KEY_DERIVATION_MAC = "HmacSHA256";
+    private static final int NONCE_SIZE = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
     private static final int RSA_KEY_SIZE = 2048;
     private static final int AES_KEY_SIZE = 256;
 
@@ -33,6 +42,16 @@ public class CryptoUtils {
         return keyPairGenerator.generateKeyPair();
     }
 
+    /**
+     * Genera una coppia di chiavi effimere X25519 per lo scambio di chiavi su curva ellittica.
+     *
+     * @return KeyPair contenente la chiave pubblica e privata X25519
+     * @throws Exception Se si verifica un errore nella generazione delle chiavi
+     */
+    public static KeyPair generateX25519KeyPair() throws Exception {
+        return KeyPairGenerator.getInstance(X25519_ALGORITHM).generateKeyPair();
+    }
+
     /**
      * Genera una chiave AES casuale.
      *
@@ -69,6 +88,20 @@ public class CryptoUtils {
         return keyFactory.generatePublic(keySpec);
     }
 
+    /**
+     * Converte una stringa Base64 in una chiave pubblica X25519.
+     *
+     * @param publicKeyBase64 Stringa Base64 della chiave pubblica
+     * @return PublicKey La chiave pubblica X25519
+     * @throws Exception Se si verifica un errore nella decodifica
+     */
+    public static PublicKey decodeX25519PublicKey(String publicKeyBase64) throws Exception {
+        byte[] keyBytes = Base64.getDecoder().decode(publicKeyBase64);
+        X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
+        KeyFactory keyFactory = KeyFactory.getInstance(X25519_ALGORITHM);
+        return keyFactory.generatePublic(keySpec);
+    }
+
     /**
      * Converte una chiave privata RSA in formato Base64.
      *
@@ -146,6 +179,55 @@ public class CryptoUtils {
         return new SecretKeySpec(decryptedKey, AES_ALGORITHM);
     }
 
+    /**
+     * Deriva la chiave AES di sessione da uno scambio X25519.
+     * La chiave è lo SHA-256 del segreto condiviso, quindi entrambi i lati ottengono
+     * la stessa chiave a 256 bit senza che questa viaggi sulla rete.
+     *
+     * @param privateKey    La chiave privata X25519 locale
+     * @param peerPublicKey La chiave pubblica X25519 dell'altro lato
+     * @return SecretKey La chiave AES derivata
+     * @throws Exception Se si verifica un errore nell'accordo di chiave
+     */
+    public static SecretKey deriveAESKeyWithX25519(PrivateKey privateKey, PublicKey peerPublicKey) throws Exception {
+        KeyAgreement keyAgreement = KeyAgreement.getInstance(X25519_ALGORITHM);
+        keyAgreement.init(privateKey);
+        keyAgreement.doPhase(peerPublicKey, true);
+        byte[] sharedSecret = keyAgreement.generateSecret();
+        byte[] keyBytes = MessageDigest.getInstance(KEY_DERIVATION_DIGEST).digest(sharedSecret);
+        return new SecretKeySpec(keyBytes, AES_ALGORITHM);
+    }
+
+    /**
+     * Deriva la chiave AES di una sessione ripresa tramite ticket.
+     * La chiave è l'HMAC-SHA256, con il segreto del ticket, dei nonce di client e server:
+     * ogni ripresa ottiene quindi una chiave nuova anche se il ticket è lo stesso.
+     *
+     * @param secret      Il segreto di sessione contenuto nel ticket
+     * @param clientNonce Il nonce casuale del client
+     * @param serverNonce Il nonce casuale del server
+     * @return SecretKey La chiave AES derivata
+     * @throws Exception Se si verifica un errore nella derivazione
+     */
+    public static SecretKey deriveResumedAESKey(byte[] secret, byte[] clientNonce, byte[] serverNonce) throws Exception {
+        Mac mac = Mac.getInstance(KEY_DERIVATION_MAC);
+        mac.init(new SecretKeySpec(secret, KEY_DERIVATION_MAC));
+        mac.update(clientNonce);
+        mac.update(serverNonce);
+        return new SecretKeySpec(mac.doFinal(), AES_ALGORITHM);
+    }
+
+    /**
+     * Genera un nonce casuale per la ripresa della sessione.
+     *
+     * @return I byte del nonce
+     */
+    public static byte[] generateNonce() {
+        byte[] nonce = new byte[NONCE_SIZE];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
     /**
      * Cripta un testo con una chiave AES.
      *
@@ -155,9 +237,7 @@ public class CryptoUtils {
      * @throws Exception Se si verifica un errore nella crittografia
      */
     public static String encryptWithAES(String plainText, SecretKey secretKey) throws Exception {
-        Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-        byte[] encryptedBytes = cipher.doFinal(plainText.getBytes("UTF-8"));
+        byte[] encryptedBytes = encryptBytesWithAES(plainText.getBytes("UTF-8"), secretKey);
         return Base64.getEncoder().encodeToString(encryptedBytes);
     }
 
@@ -171,9 +251,35 @@ public class CryptoUtils {
      */
     public static String decryptWithAES(String encryptedBase64, SecretKey secretKey) throws Exception {
         byte[] encryptedBytes = Base64.getDecoder().decode(encryptedBase64);
+        byte[] decryptedBytes = decryptBytesWithAES(encryptedBytes, secretKey);
+        return new String(decryptedBytes, "UTF-8");
+    }
+
+    /**
+     * Cripta dei byte con una chiave AES, senza codifica Base64.
+     *
+     * @param plainBytes I byte da criptare
+     * @param secretKey La chiave AES
+     * @return I byte criptati
+     * @throws Exception Se si verifica un errore nella crittografia
+     */
+    public static byte[] encryptBytesWithAES(byte[] plainBytes, SecretKey secretKey) throws Exception {
+        Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+        return cipher.doFinal(plainBytes);
+    }
+
+    /**
+     * Decripta dei byte con una chiave AES, senza codifica Base64.
+     *
+     * @param encryptedBytes I byte criptati
+     * @param secretKey La chiave AES
+     * @return I byte decriptati
+     * @throws Exception Se si verifica un errore nella decrittografia
+     */
+    public static byte[] decryptBytesWithAES(byte[] encryptedBytes, SecretKey secretKey) throws Exception {
         Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
         cipher.init(Cipher.DECRYPT_MODE, secretKey);
-        byte[] decryptedBytes = cipher.doFinal(encryptedBytes);
-        return new String(decryptedBytes, "UTF-8");
+        return cipher.doFinal(encryptedBytes);
     }
 }
@@ -1,11 +1,46 @@
 package battaglia.tpsit.common;
 
+import java.util.Arrays;
+
 /**
  * Enumerazione delle possibili mosse nel gioco "Sasso Carta Forbice Lucertola Spock".
  */
 public enum GameMoves {
     SASSO, CARTA, FORBICE, LUCERTOLA, SPOCK;
 
+    private static final GameMoves[] VALUES = values();
+    private static final int COUNT = VALUES.length;
+    private static final boolean[] WINS = new boolean[COUNT * COUNT];
+    private static final String[] DESCRIPTIONS = new String[COUNT * COUNT];
+
+    // Tabella 5x5 degli esiti, indicizzata per (mossa, mossa dell'avversario)
+    static {
+        Arrays.fill(DESCRIPTIONS, "");
+        rule(SASSO, FORBICE, "La Roccia rompe le Forbici");
+        rule(SASSO, LUCERTOLA, "La Roccia schiaccia la Lucertola");
+        rule(CARTA, SASSO, "La Carta copre la Roccia");
+        rule(CARTA, SPOCK, "La Carta smentisce Spock");
+        rule(FORBICE, CARTA, "La Forbice taglia la Carta");
+        rule(FORBICE, LUCERTOLA, "La Forbice decapita la Lucertola");
+        rule(LUCERTOLA, CARTA, "La Lucertola mangia la Carta");
+        rule(LUCERTOLA, SPOCK, "La Lucertola avvelena Spock");
+        rule(SPOCK, SASSO, "Spock vaporizza la Roccia");
+        rule(SPOCK, FORBICE, "Spock frantuma le Forbici");
+    }
+
+    /**
+     * Registra nella tabella degli esiti una regola di vittoria.
+     *
+     * @param winner      La mossa vincente
+     * @param loser       La mossa sconfitta
+     * @param description La descrizione della regola
+     */
+    private static void rule(GameMoves winner, GameMoves loser, String description) {
+        int index = winner.ordinal() * COUNT + loser.ordinal();
+        WINS[index] = true;
+        DESCRIPTIONS[index] = description;
+    }
+
     /**
      * Determina se questa mossa batte la mossa dell'avversario.
      *
@@ -13,52 +48,29 @@ public enum GameMoves {
      * @return {@code true} se questa mossa batte quella dell'avversario, {@code false} altrimenti
      */
     public boolean beats(GameMoves opponentMove) {
-        switch (this) {
-            case SASSO:
-                return opponentMove == FORBICE || opponentMove == LUCERTOLA;
-            case CARTA:
-                return opponentMove == SASSO || opponentMove == SPOCK;
-            case FORBICE:
-                return opponentMove == CARTA || opponentMove == LUCERTOLA;
-            case LUCERTOLA:
-                return opponentMove == CARTA || opponentMove == SPOCK;
-            case SPOCK:
-                return opponentMove == SASSO || opponentMove == FORBICE;
-            default:
-                return false;
-        }
+        return WINS[ordinal() * COUNT + opponentMove.ordinal()];
     }
 
     /**
      * Restituisce una descrizione della regola di vittoria.
      *
      * @param opponent La mossa dell'avversario
-     * @return Una stringa che descrive come questa mossa batte quella dell'avversario
+     * @return Una stringa che descrive come questa mossa batte quella dell'avversario,
+     *         vuota se questa mossa non la batte
      */
     public String getWinDescription(GameMoves opponent) {
-        switch (this) {
-            case SASSO:
-                if (opponent == FORBICE) return "La Roccia rompe le Forbici";
-                if (opponent == LUCERTOLA) return "La Roccia schiaccia la Lucertola";
-                break;
-            case CARTA:
-                if (opponent == SASSO) return "La Carta copre la Roccia";
-                if (opponent == SPOCK) return "La Carta smentisce Spock";
-                break;
-            case FORBICE:
-                if (opponent == CARTA) return "La Forbice taglia la Carta";
-                if (opponent == LUCERTOLA) return "La Forbice decapita la Lucertola";
-                break;
-            case LUCERTOLA:
-                if (opponent == CARTA) return "La Lucertola mangia la Carta";
-                if (opponent == SPOCK) return "La Lucertola avvelena Spock";
-                break;
-            case SPOCK:
-                if (opponent == SASSO) return "Spock vaporizza la Roccia";
-                if (opponent == FORBICE) return "Spock frantuma le Forbici";
-                break;
-        }
-        return "";
+        return DESCRIPTIONS[ordinal() * COUNT + opponent.ordinal()];
+    }
+
+    /**
+     * Restituisce la mossa con un certo ordinale, senza lanciare eccezioni per valori non validi:
+     * il server la usa per decodificare le mosse ricevute come singolo byte.
+     *
+     * @param ordinal L'ordinale della mossa
+     * @return La mossa, o {@code null} se l'ordinale è fuori intervallo
+     */
+    public static GameMoves fromOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < COUNT ? VALUES[ordinal] : null;
     }
 
     /**
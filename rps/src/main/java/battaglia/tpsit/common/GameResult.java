@@ -2,8 +2,12 @@ package battaglia.tpsit.common;
 
 import java.io.Serializable;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 /**
  * Rappresenta il risultato di una partita.
+ * Una manche persa a tavolino ha {@link #isForfeit()} vero e la mossa del giocatore assente a {@code null};
+ * se nessuno dei due giocatori ha scelto una mossa in tempo anche il vincitore è {@code null}.
  */
 public class GameResult implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -13,6 +17,8 @@ public class GameResult implements Serializable {
     private GameMoves opponentMove;
     private String winDescription;
     private boolean draw;
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean forfeit;
 
     /**
      * Costruttore predefinito per Jackson.
@@ -139,4 +145,22 @@ public class GameResult implements Serializable {
     public void setDraw(boolean draw) {
         this.draw = draw;
     }
-}
\ No newline at end of file
+
+    /**
+     * Verifica se la manche è stata decisa a tavolino per lo scadere del tempo.
+     *
+     * @return {@code true} se almeno un giocatore non ha scelto una mossa in tempo
+     */
+    public boolean isForfeit() {
+        return forfeit;
+    }
+
+    /**
+     * Imposta se la manche è stata decisa a tavolino per lo scadere del tempo.
+     *
+     * @param forfeit {@code true} se almeno un giocatore non ha scelto una mossa in tempo
+     */
+    public void setForfeit(boolean forfeit) {
+        this.forfeit = forfeit;
+    }
+}
@@ -0,0 +1,198 @@
+package battaglia.tpsit.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Serializzazione JSON condivisa da client e server.
+ * <p>
+ * Reader e writer di Jackson sono immutabili e thread-safe: vengono costruiti una sola volta
+ * per {@link Message} e {@link GameResult} e riusati da tutte le connessioni, invece di creare
+ * un {@link ObjectMapper} (con le relative cache) per ogni client.
+ * <p>
+ * Il risultato di una manche normale dipende solo dall'esito in {@link RoundOutcome} e dal nome del
+ * vincitore: il JSON di ogni esito viene serializzato una sola volta come modello, e per ogni manche
+ * si copia il modello inserendo il nome già codificato, senza passare da Jackson.
+ */
+public final class JsonCodec {
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    private static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+    private static final ObjectReader RESULT_READER = MAPPER.readerFor(GameResult.class);
+    private static final ObjectWriter RESULT_WRITER = MAPPER.writerFor(GameResult.class);
+
+    private JsonCodec() {
+    }
+
+    /**
+     * Scrive un messaggio in JSON direttamente su uno stream, senza chiuderlo.
+     *
+     * @param message Il messaggio da scrivere
+     * @param output  Lo stream di destinazione
+     * @throws IOException Se si verifica un errore di scrittura
+     */
+    public static void writeMessage(Message message, OutputStream output) throws IOException {
+        MESSAGE_WRITER.writeValue(output, message);
+    }
+
+    /**
+     * Legge un messaggio JSON da una porzione di array.
+     *
+     * @param bytes  L'array che contiene il JSON
+     * @param offset La posizione iniziale
+     * @param length Il numero di byte da leggere
+     * @return Il messaggio letto
+     * @throws IOException Se il JSON non è valido
+     */
+    public static Message readMessage(byte[] bytes, int offset, int length) throws IOException {
+        return MESSAGE_READER.readValue(bytes, offset, length);
+    }
+
+    /**
+     * Serializza il risultato di una partita in JSON.
+     *
+     * @param result Il risultato da serializzare
+     * @return I byte UTF-8 del JSON
+     * @throws IOException Se si verifica un errore di serializzazione
+     */
+    public static byte[] writeResult(GameResult result) throws IOException {
+        return RESULT_WRITER.writeValueAsBytes(result);
+    }
+
+    /**
+     * Scrive il risultato di una manche a partire dal modello pre-serializzato del suo esito.
+     * Produce lo stesso JSON di {@link #writeResult(GameResult)} applicato a
+     * {@link RoundOutcome#toResult(String, String)}, con una sola copia di array.
+     *
+     * @param outcome      L'esito della manche
+     * @param quotedWinner Il nome del vincitore codificato con {@link #quote(String)},
+     *                     ignorato in caso di pareggio
+     * @return I byte UTF-8 del JSON
+     */
+    public static byte[] writeResult(RoundOutcome outcome, byte[] quotedWinner) {
+        return ResultTemplates.write(outcome, quotedWinner);
+    }
+
+    /**
+     * Codifica una stringa come valore JSON, virgolette comprese, in UTF-8.
+     * Il server lo usa una volta per giocatore per preparare il nome da inserire nei modelli.
+     *
+     * @param value La stringa da codificare
+     * @return I byte UTF-8 della stringa JSON
+     */
+    public static byte[] quote(String value) {
+        byte[] escaped = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+        byte[] quoted = new byte[escaped.length + 2];
+        quoted[0] = '"';
+        System.arraycopy(escaped, 0, quoted, 1, escaped.length);
+        quoted[quoted.length - 1] = '"';
+        return quoted;
+    }
+
+    /**
+     * Legge il risultato di una partita da JSON.
+     *
+     * @param bytes I byte UTF-8 del JSON
+     * @return Il risultato letto
+     * @throws IOException Se il JSON non è valido
+     */
+    public static GameResult readResult(byte[] bytes) throws IOException {
+        return RESULT_READER.readValue(bytes);
+    }
+
+    /**
+     * Modelli pre-serializzati dei risultati, uno per ogni esito della tabella.
+     * La classe viene caricata solo al primo uso, quindi il client non li costruisce.
+     */
+    private static final class ResultTemplates {
+        private static final String WINNER_MARKER = "#vincitore#";
+        private static final byte[][] PREFIXES = new byte[RoundOutcome.tableSize()][];
+        private static final byte[][] SUFFIXES = new byte[RoundOutcome.tableSize()][];
+
+        static {
+            byte[] marker = quote(WINNER_MARKER);
+            for (GameMoves move : GameMoves.values()) {
+                for (GameMoves opponentMove : GameMoves.values()) {
+                    RoundOutcome outcome = RoundOutcome.of(move, opponentMove);
+                    byte[] json = serialize(outcome.toResult(WINNER_MARKER, WINNER_MARKER));
+                    int split = indexOf(json, marker);
+                    if (split < 0) {
+                        PREFIXES[outcome.getIndex()] = json; // Pareggio: nessun nome da inserire
+                    } else {
+                        PREFIXES[outcome.getIndex()] = Arrays.copyOfRange(json, 0, split);
+                        SUFFIXES[outcome.getIndex()] = Arrays.copyOfRange(json, split + marker.length, json.length);
+                    }
+                }
+            }
+        }
+
+        private ResultTemplates() {
+        }
+
+        /**
+         * Compone il JSON di un risultato dal modello del suo esito.
+         *
+         * @param outcome      L'esito della manche
+         * @param quotedWinner Il nome del vincitore già codificato
+         * @return I byte UTF-8 del JSON
+         */
+        static byte[] write(RoundOutcome outcome, byte[] quotedWinner) {
+            byte[] prefix = PREFIXES[outcome.getIndex()];
+            byte[] suffix = SUFFIXES[outcome.getIndex()];
+            if (suffix == null) {
+                return prefix.clone();
+            }
+            if (quotedWinner == null) {
+                throw new IllegalArgumentException("Vincitore mancante per l'esito " + outcome.getDescription());
+            }
+
+            byte[] json = new byte[prefix.length + quotedWinner.length + suffix.length];
+            System.arraycopy(prefix, 0, json, 0, prefix.length);
+            System.arraycopy(quotedWinner, 0, json, prefix.length, quotedWinner.length);
+            System.arraycopy(suffix, 0, json, prefix.length + quotedWinner.length, suffix.length);
+            return json;
+        }
+
+        /**
+         * Serializza un risultato con Jackson durante la costruzione dei modelli.
+         *
+         * @param result Il risultato
+         * @return I byte UTF-8 del JSON
+         */
+        private static byte[] serialize(GameResult result) {
+            try {
+                return writeResult(result);
+            } catch (IOException e) {
+                throw new IllegalStateException("Impossibile serializzare il modello del risultato", e);
+            }
+        }
+
+        /**
+         * Cerca una sequenza di byte in un array.
+         *
+         * @param data    L'array in cui cercare
+         * @param pattern La sequenza cercata
+         * @return La posizione della prima occorrenza, o -1 se non è presente
+         */
+        private static int indexOf(byte[] data, byte[] pattern) {
+            outer:
+            for (int i = 0; i + pattern.length <= data.length; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (data[i + j] != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package battaglia.tpsit.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec del protocollo di base: un oggetto JSON per riga, terminato da newline.
+ * Non ha stato: la serializzazione usa i reader e i writer condivisi di {@link JsonCodec}.
+ */
+public class JsonLineCodec implements MessageCodec {
+
+    @Override
+    public byte[] encode(Message message) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(128);
+        write(message, frame);
+        return frame.toByteArray();
+    }
+
+    @Override
+    public void write(Message message, OutputStream output) throws IOException {
+        JsonCodec.writeMessage(message, output);
+        output.write('\n');
+    }
+
+    @Override
+    public Message read(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = input.read()) != -1) {
+            if (b == '\n') {
+                if (line.size() == 0) {
+                    continue; // Riga vuota
+                }
+                return JsonCodec.readMessage(line.toByteArray(), 0, line.size());
+            }
+            if (b != '\r') {
+                if (line.size() >= MAX_FRAME_SIZE) {
+                    throw new IOException("Frame JSON troppo lungo");
+                }
+                line.write(b);
+            }
+        }
+        return null; // Stream terminato
+    }
+
+    @Override
+    public Message decode(ByteBuffer buffer) throws IOException {
+        while (true) {
+            int start = buffer.position();
+            int end = indexOfNewline(buffer, start);
+            if (end < 0) {
+                if (buffer.remaining() > MAX_FRAME_SIZE) {
+                    throw new IOException("Frame JSON troppo lungo");
+                }
+                return null;
+            }
+
+            buffer.position(end + 1);
+            int length = end - start;
+            if (length > 0 && buffer.get(end - 1) == '\r') {
+                length--;
+            }
+            if (length == 0) {
+                continue; // Riga vuota
+            }
+
+            if (buffer.hasArray()) {
+                return JsonCodec.readMessage(buffer.array(), buffer.arrayOffset() + start, length);
+            }
+            byte[] frame = new byte[length];
+            for (int i = 0; i < length; i++) {
+                frame[i] = buffer.get(start + i);
+            }
+            return JsonCodec.readMessage(frame, 0, length);
+        }
+    }
+
+    /**
+     * Cerca il prossimo carattere newline nel buffer.
+     *
+     * @param buffer Il buffer in cui cercare
+     * @param from   La posizione da cui iniziare
+     * @return La posizione del newline, o -1 se assente
+     */
+    private static int indexOfNewline(ByteBuffer buffer, int from) {
+        for (int i = from; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,10 +1,18 @@
 package battaglia.tpsit.common;
 
 import java.io.Serializable;
+import java.util.Base64;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 /**
  * Rappresenta un messaggio nel protocollo di comunicazione.
+ * I dati cifrati possono essere impostati come byte grezzi ({@link #setPayload(byte[])}):
+ * il codec JSON li trasmette in Base64 nel campo {@code data}, quello binario così come sono.
  */
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class Message implements Serializable {
     private static final long serialVersionUID = 1L;
 
@@ -12,6 +20,10 @@ public class Message implements Serializable {
     private String username;
     private String key;
     private String data;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String features;
+    @JsonIgnore
+    private byte[] payload;
 
     /**
      * Costruttore predefinito per Jackson.
@@ -33,6 +45,35 @@ public class Message implements Serializable {
         return message;
     }
 
+    /**
+     * Crea un messaggio di tipo HELLO che richiede le funzionalità opzionali indicate.
+     *
+     * @param username Il nome utente del client
+     * @param features Le funzionalità richieste (vedi {@link ProtocolFeatures})
+     * @return Un messaggio di tipo HELLO
+     */
+    public static Message createHello(String username, String features) {
+        Message message = createHello(username);
+        message.setFeatures(features);
+        return message;
+    }
+
+    /**
+     * Crea un messaggio di tipo HELLO che chiede di riprendere una sessione precedente.
+     *
+     * @param username Il nome utente del client
+     * @param features Le funzionalità richieste (vedi {@link ProtocolFeatures})
+     * @param ticket Il ticket di ripresa ricevuto dal server
+     * @param clientNonce Il nonce casuale del client per derivare la nuova chiave
+     * @return Un messaggio di tipo HELLO
+     */
+    public static Message createResumeHello(String username, String features, String ticket, byte[] clientNonce) {
+        Message message = createHello(username, features);
+        message.setKey(ticket);
+        message.setPayload(clientNonce);
+        return message;
+    }
+
     /**
      * Crea un messaggio di tipo PUBLIC_KEY.
      *
@@ -46,6 +87,19 @@ public class Message implements Serializable {
         return message;
     }
 
+    /**
+     * Crea un messaggio di tipo PUBLIC_KEY che conferma le funzionalità accettate dal server.
+     *
+     * @param publicKeyBase64 La chiave pubblica in formato Base64
+     * @param features Le funzionalità accettate (vedi {@link ProtocolFeatures})
+     * @return Un messaggio di tipo PUBLIC_KEY
+     */
+    public static Message createPublicKey(String publicKeyBase64, String features) {
+        Message message = createPublicKey(publicKeyBase64);
+        message.setFeatures(features);
+        return message;
+    }
+
     /**
      * Crea un messaggio di tipo AES_KEY.
      *
@@ -72,6 +126,19 @@ public class Message implements Serializable {
         return message;
     }
 
+    /**
+     * Crea un messaggio di tipo MOVE a partire dai byte cifrati della mossa.
+     *
+     * @param encryptedMove La mossa criptata
+     * @return Un messaggio di tipo MOVE
+     */
+    public static Message createMove(byte[] encryptedMove) {
+        Message message = new Message();
+        message.setType(MessageType.MOVE);
+        message.setPayload(encryptedMove);
+        return message;
+    }
+
     /**
      * Crea un messaggio di tipo RESULT.
      *
@@ -85,6 +152,49 @@ public class Message implements Serializable {
         return message;
     }
 
+    /**
+     * Crea un messaggio di tipo RESULT a partire dai byte cifrati del risultato.
+     *
+     * @param encryptedResult Il risultato criptato
+     * @return Un messaggio di tipo RESULT
+     */
+    public static Message createResult(byte[] encryptedResult) {
+        Message message = new Message();
+        message.setType(MessageType.RESULT);
+        message.setPayload(encryptedResult);
+        return message;
+    }
+
+    /**
+     * Crea un messaggio di tipo SESSION_TICKET.
+     *
+     * @param ticket Il ticket di ripresa cifrato
+     * @param lifetimeSeconds La validità del ticket in secondi
+     * @return Un messaggio di tipo SESSION_TICKET
+     */
+    public static Message createSessionTicket(String ticket, long lifetimeSeconds) {
+        Message message = new Message();
+        message.setType(MessageType.SESSION_TICKET);
+        message.setKey(ticket);
+        message.setData(Long.toString(lifetimeSeconds));
+        return message;
+    }
+
+    /**
+     * Crea un messaggio di tipo RESUMED che conferma la ripresa della sessione.
+     *
+     * @param serverNonce Il nonce casuale del server per derivare la nuova chiave
+     * @param features Le funzionalità accettate (vedi {@link ProtocolFeatures})
+     * @return Un messaggio di tipo RESUMED
+     */
+    public static Message createResumed(byte[] serverNonce, String features) {
+        Message message = new Message();
+        message.setType(MessageType.RESUMED);
+        message.setPayload(serverNonce);
+        message.setFeatures(features);
+        return message;
+    }
+
     /**
      * Crea un messaggio di tipo ERROR.
      *
@@ -122,6 +232,28 @@ public class Message implements Serializable {
         return message;
     }
 
+    /**
+     * Crea un messaggio di tipo PING.
+     *
+     * @return Un messaggio di tipo PING
+     */
+    public static Message createPing() {
+        Message message = new Message();
+        message.setType(MessageType.PING);
+        return message;
+    }
+
+    /**
+     * Crea un messaggio di tipo PONG.
+     *
+     * @return Un messaggio di tipo PONG
+     */
+    public static Message createPong() {
+        Message message = new Message();
+        message.setType(MessageType.PONG);
+        return message;
+    }
+
     /**
      * Crea un messaggio di tipo READY.
      *
@@ -189,10 +321,14 @@ public class Message implements Serializable {
 
     /**
      * Restituisce i dati associati al messaggio.
+     * Se il messaggio contiene byte grezzi, vengono restituiti codificati in Base64.
      *
      * @return I dati
      */
     public String getData() {
+        if (data == null && payload != null) {
+            return Base64.getEncoder().encodeToString(payload);
+        }
         return data;
     }
 
@@ -203,5 +339,59 @@ public class Message implements Serializable {
      */
     public void setData(String data) {
         this.data = data;
+        this.payload = null;
+    }
+
+    /**
+     * Restituisce i dati cifrati associati al messaggio come byte grezzi.
+     * Se il messaggio è stato ricevuto in JSON, il campo {@code data} viene decodificato da Base64.
+     *
+     * @return I byte dei dati, o {@code null} se assenti
+     */
+    @JsonIgnore
+    public byte[] getPayload() {
+        if (payload == null && data != null) {
+            return Base64.getDecoder().decode(data);
+        }
+        return payload;
+    }
+
+    /**
+     * Imposta i dati cifrati associati al messaggio come byte grezzi.
+     *
+     * @param payload I byte dei dati
+     */
+    @JsonIgnore
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+        this.data = null;
+    }
+
+    /**
+     * Verifica se i dati del messaggio sono byte grezzi anziché testo.
+     *
+     * @return {@code true} se il messaggio contiene byte grezzi
+     */
+    @JsonIgnore
+    public boolean hasPayload() {
+        return payload != null;
+    }
+
+    /**
+     * Restituisce le funzionalità opzionali del protocollo richieste o accettate.
+     *
+     * @return Le funzionalità separate da virgola, o {@code null} se assenti
+     */
+    public String getFeatures() {
+        return features;
+    }
+
+    /**
+     * Imposta le funzionalità opzionali del protocollo richieste o accettate.
+     *
+     * @param features Le funzionalità separate da virgola
+     */
+    public void setFeatures(String features) {
+        this.features = features;
     }
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package battaglia.tpsit.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Codifica e decodifica dei {@link Message} scambiati sul socket.
+ * Ogni implementazione definisce il proprio formato dei frame e può essere usata sia
+ * con stream bloccanti sia con buffer non bloccanti.
+ */
+public interface MessageCodec {
+
+    /** Dimensione massima di un frame, oltre la quale la connessione viene considerata non valida. */
+    int MAX_FRAME_SIZE = 64 * 1024;
+
+    /**
+     * Codifica un messaggio in un frame completo, pronto per essere scritto sul socket.
+     *
+     * @param message Il messaggio da codificare
+     * @return I byte del frame
+     * @throws IOException Se il messaggio non può essere codificato
+     */
+    byte[] encode(Message message) throws IOException;
+
+    /**
+     * Scrive un messaggio direttamente su uno stream, senza svuotarlo.
+     * L'implementazione predefinita scrive il frame prodotto da {@link #encode(Message)}.
+     *
+     * @param message Il messaggio da scrivere
+     * @param output  Lo stream di destinazione
+     * @throws IOException Se il messaggio non può essere codificato o scritto
+     */
+    default void write(Message message, OutputStream output) throws IOException {
+        output.write(encode(message));
+    }
+
+    /**
+     * Legge un frame completo da uno stream bloccante.
+     *
+     * @param input Lo stream da cui leggere
+     * @return Il messaggio letto, o {@code null} se lo stream è terminato
+     * @throws IOException Se si verifica un errore di lettura o il frame non è valido
+     */
+    Message read(InputStream input) throws IOException;
+
+    /**
+     * Decodifica un frame da un buffer, se è disponibile per intero.
+     * In caso di successo la posizione del buffer avanza oltre il frame; altrimenti resta invariata.
+     *
+     * @param buffer Il buffer in modalità lettura
+     * @return Il messaggio decodificato, o {@code null} se il frame non è ancora completo
+     * @throws IOException Se il frame non è valido
+     */
+    Message decode(ByteBuffer buffer) throws IOException;
+}
@@ -12,5 +12,9 @@ public enum MessageType {
     ERROR,         // Entrambi: Segnalazione errori
     GAME_START,    // Server -> Client: Notifica inizio partita
     WAIT_OPPONENT, // Server -> Client: In attesa dell'avversario
-    READY          // Client -> Client: Pronto per la prossima manche
+    READY,         // Client -> Client: Pronto per la prossima manche
+    SESSION_TICKET, // Server -> Client: Ticket per riprendere la sessione senza scambio di chiavi
+    RESUMED,       // Server -> Client: Sessione ripresa tramite ticket
+    PING,          // Entrambi: Verifica che la connessione sia ancora attiva
+    PONG           // Entrambi: Risposta a PING
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package battaglia.tpsit.common;
+
+/**
+ * Funzionalità opzionali del protocollo negoziate durante lo scambio HELLO / PUBLIC_KEY.
+ * Il client elenca nel campo {@code features} dell'HELLO quelle che supporta; il server
+ * risponde nel PUBLIC_KEY con il sottoinsieme accettato. Un peer che non conosce il campo
+ * lo ignora, quindi client e server precedenti continuano a usare il protocollo di base.
+ */
+public final class ProtocolFeatures {
+
+    /** Codec binario con frame a lunghezza prefissata al posto del JSON delimitato da newline. */
+    public static final String BINARY = "binary";
+
+    /** Cifratura autenticata AES-GCM con nonce a contatore (vedi {@link CryptoContext}). */
+    public static final String GCM = "gcm";
+
+    /**
+     * Scambio di chiavi effimero X25519 al posto della chiave AES cifrata con RSA:
+     * il PUBLIC_KEY porta la chiave X25519 del server, l'AES_KEY quella del client.
+     */
+    public static final String X25519 = "x25519";
+
+    /** Heartbeat: il server invia PING alle connessioni inattive e il client risponde con PONG. */
+    public static final String HEARTBEAT = "heartbeat";
+
+    /** Mossa cifrata come singolo byte con l'ordinale di {@link GameMoves} invece del nome in UTF-8. */
+    public static final String MOVE8 = "move8";
+
+    private ProtocolFeatures() {
+    }
+
+    /**
+     * Verifica se un elenco di funzionalità contiene quella indicata.
+     *
+     * @param features Le funzionalità separate da virgola (può essere {@code null})
+     * @param feature  La funzionalità da cercare
+     * @return {@code true} se la funzionalità è presente
+     */
+    public static boolean contains(String features, String feature) {
+        if (features == null) {
+            return false;
+        }
+        for (String candidate : features.split(",")) {
+            if (candidate.trim().equals(feature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Aggiunge una funzionalità a un elenco.
+     *
+     * @param features L'elenco corrente (può essere {@code null})
+     * @param feature  La funzionalità da aggiungere
+     * @return Il nuovo elenco separato da virgola
+     */
+    public static String add(String features, String feature) {
+        return features == null || features.isEmpty() ? feature : features + "," + feature;
+    }
+}
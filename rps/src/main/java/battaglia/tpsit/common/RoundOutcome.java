@@ -0,0 +1,176 @@
+package battaglia.tpsit.common;
+
+/**
+ * Esito di una manche dal punto di vista di un giocatore, per una coppia (mossa, mossa dell'avversario).
+ * <p>
+ * Le 25 combinazioni possibili vengono costruite una sola volta all'avvio, con descrizione e mosse
+ * già risolte: risolvere una manche è una lettura da tabella e non alloca né concatena stringhe.
+ * Gli oggetti sono immutabili e condivisi da tutte le sessioni.
+ */
+public final class RoundOutcome {
+    private static final GameMoves[] MOVES = GameMoves.values();
+    private static final RoundOutcome[] TABLE = new RoundOutcome[MOVES.length * MOVES.length];
+
+    static {
+        for (GameMoves move : MOVES) {
+            for (GameMoves opponentMove : MOVES) {
+                RoundOutcome outcome = new RoundOutcome(move, opponentMove);
+                TABLE[outcome.index] = outcome;
+            }
+        }
+    }
+
+    private final int index;
+    private final GameMoves move;
+    private final GameMoves opponentMove;
+    private final boolean draw;
+    private final boolean win;
+    private final String description;
+
+    /**
+     * Costruttore di un esito della tabella.
+     *
+     * @param move         La mossa del giocatore
+     * @param opponentMove La mossa dell'avversario
+     */
+    private RoundOutcome(GameMoves move, GameMoves opponentMove) {
+        this.index = move.ordinal() * MOVES.length + opponentMove.ordinal();
+        this.move = move;
+        this.opponentMove = opponentMove;
+        this.draw = move == opponentMove;
+        this.win = move.beats(opponentMove);
+        if (draw) {
+            this.description = "Pareggio - Entrambi i giocatori hanno scelto " + move;
+        } else if (win) {
+            this.description = move.getWinDescription(opponentMove);
+        } else {
+            this.description = opponentMove.getWinDescription(move);
+        }
+    }
+
+    /**
+     * Restituisce l'esito di una manche dal punto di vista di un giocatore.
+     *
+     * @param move         La mossa del giocatore
+     * @param opponentMove La mossa dell'avversario
+     * @return L'esito condiviso per la coppia di mosse
+     */
+    public static RoundOutcome of(GameMoves move, GameMoves opponentMove) {
+        return TABLE[move.ordinal() * MOVES.length + opponentMove.ordinal()];
+    }
+
+    /**
+     * Restituisce il numero di esiti della tabella.
+     *
+     * @return Il numero di coppie di mosse
+     */
+    static int tableSize() {
+        return TABLE.length;
+    }
+
+    /**
+     * Restituisce la posizione dell'esito nella tabella, usata per indicizzare dati derivati.
+     *
+     * @return La posizione nella tabella
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Restituisce l'esito della stessa manche dal punto di vista dell'avversario.
+     *
+     * @return L'esito per l'avversario
+     */
+    public RoundOutcome reverse() {
+        return of(opponentMove, move);
+    }
+
+    /**
+     * Restituisce la mossa del giocatore.
+     *
+     * @return La mossa del giocatore
+     */
+    public GameMoves getMove() {
+        return move;
+    }
+
+    /**
+     * Restituisce la mossa dell'avversario.
+     *
+     * @return La mossa dell'avversario
+     */
+    public GameMoves getOpponentMove() {
+        return opponentMove;
+    }
+
+    /**
+     * Indica se la manche è finita in pareggio.
+     *
+     * @return {@code true} se entrambi hanno scelto la stessa mossa
+     */
+    public boolean isDraw() {
+        return draw;
+    }
+
+    /**
+     * Indica se il giocatore ha vinto la manche.
+     *
+     * @return {@code true} se la mossa del giocatore batte quella dell'avversario
+     */
+    public boolean isWin() {
+        return win;
+    }
+
+    /**
+     * Restituisce il punteggio della manche per il giocatore, come usato dal calcolo Elo.
+     *
+     * @return 1 per la vittoria, 0,5 per il pareggio, 0 per la sconfitta
+     */
+    public double getScore() {
+        return draw ? 0.5 : win ? 1.0 : 0.0;
+    }
+
+    /**
+     * Restituisce la mossa vincente, o quella comune in caso di pareggio.
+     *
+     * @return La mossa vincente
+     */
+    public GameMoves getWinnerMove() {
+        return win || draw ? move : opponentMove;
+    }
+
+    /**
+     * Restituisce la mossa sconfitta, o quella comune in caso di pareggio.
+     *
+     * @return La mossa sconfitta
+     */
+    public GameMoves getLoserMove() {
+        return win || draw ? opponentMove : move;
+    }
+
+    /**
+     * Restituisce la descrizione della manche.
+     *
+     * @return La descrizione della regola di vittoria o del pareggio
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Costruisce il risultato da inviare ai client. Il contenuto è lo stesso per entrambi i giocatori:
+     * il risultato riporta il vincitore con le mosse del vincitore e dello sconfitto, non la prospettiva
+     * di chi lo riceve, quindi un solo oggetto serve tutti e due.
+     *
+     * @param playerName   Nome del giocatore
+     * @param opponentName Nome dell'avversario
+     * @return Il risultato della manche
+     */
+    public GameResult toResult(String playerName, String opponentName) {
+        String winner = draw ? null : win ? playerName : opponentName;
+        GameResult result = new GameResult(winner, getWinnerMove(), getLoserMove(), description);
+        result.setDraw(draw);
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package battaglia.tpsit.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contatori degli interventi della politica di backpressure.
+ * Usa {@link LongAdder} perché i contatori vengono incrementati da molti thread
+ * e letti solo occasionalmente.
+ */
+public class BackpressureMetrics {
+    private final LongAdder budgetExceeded = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+    private final LongAdder sessionsPaused = new LongAdder();
+    private final LongAdder slowConsumersDisconnected = new LongAdder();
+
+    /**
+     * Registra un frame che ha superato il budget di una connessione.
+     */
+    void recordBudgetExceeded() {
+        budgetExceeded.increment();
+    }
+
+    /**
+     * Registra un aggiornamento della lobby scartato.
+     */
+    void recordFrameDropped() {
+        framesDropped.increment();
+    }
+
+    /**
+     * Registra una sessione sospesa in attesa che un client smaltisca la coda.
+     */
+    void recordSessionPaused() {
+        sessionsPaused.increment();
+    }
+
+    /**
+     * Registra un client disconnesso perché troppo lento.
+     */
+    void recordSlowConsumerDisconnected() {
+        slowConsumersDisconnected.increment();
+    }
+
+    /**
+     * Restituisce quante volte un frame ha superato il budget di una connessione.
+     *
+     * @return Il numero di superamenti del budget
+     */
+    public long getBudgetExceeded() {
+        return budgetExceeded.sum();
+    }
+
+    /**
+     * Restituisce il numero di aggiornamenti della lobby scartati.
+     *
+     * @return Il numero di frame scartati
+     */
+    public long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    /**
+     * Restituisce il numero di sessioni sospese.
+     *
+     * @return Il numero di sospensioni
+     */
+    public long getSessionsPaused() {
+        return sessionsPaused.sum();
+    }
+
+    /**
+     * Restituisce il numero di client disconnessi perché troppo lenti.
+     *
+     * @return Il numero di disconnessioni
+     */
+    public long getSlowConsumersDisconnected() {
+        return slowConsumersDisconnected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "budget superato=" + getBudgetExceeded()
+                + ", frame scartati=" + getFramesDropped()
+                + ", sessioni sospese=" + getSessionsPaused()
+                + ", client lenti disconnessi=" + getSlowConsumersDisconnected();
+    }
+}
@@ -0,0 +1,23 @@
+package battaglia.tpsit.server;
+
+/**
+ * Politiche applicate quando un client non legge abbastanza velocemente e la sua coda
+ * di uscita supera il budget di frame o di byte.
+ */
+public enum BackpressurePolicy {
+    DROP_LOBBY,    // Scarta gli aggiornamenti della lobby, disconnette se il frame è di gioco
+    DISCONNECT,    // Disconnette subito il client
+    PAUSE_SESSION; // Accoda oltre il budget fino al doppio e sospende l'avvio delle nuove manche
+
+    /**
+     * Converte una stringa nella politica corrispondente, ignorando maiuscole e minuscole
+     * e accettando il trattino al posto del trattino basso.
+     *
+     * @param value Il nome della politica (es. "drop-lobby")
+     * @return La politica corrispondente
+     * @throws IllegalArgumentException Se il nome non corrisponde a nessuna politica
+     */
+    public static BackpressurePolicy fromString(String value) {
+        return BackpressurePolicy.valueOf(value.trim().replace('-', '_').toUpperCase());
+    }
+}
@@ -0,0 +1,55 @@
+package battaglia.tpsit.server;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Canale di uscita verso un singolo client.
+ * Astrae il socket bloccante e il canale NIO, così che {@link ServerClientHandler}
+ * gestisca il protocollo indipendentemente dal motore di rete.
+ */
+interface ClientTransport {
+
+    /**
+     * Accoda un frame già codificato per l'invio al client.
+     *
+     * @param frame         I byte del frame, terminatore incluso
+     * @param allowOverflow {@code true} per accettare il frame oltre il budget della coda di uscita
+     * @return {@code false} se il frame supera il budget della coda di uscita e non è stato accodato
+     * @throws IOException Se il canale è chiuso o non è possibile avviare l'invio
+     */
+    boolean send(byte[] frame, boolean allowOverflow) throws IOException;
+
+    /**
+     * Indica se la coda di uscita ha accettato frame oltre il budget e non è ancora stata svuotata.
+     *
+     * @return {@code true} se il client è in ritardo nella lettura
+     */
+    boolean isCongested();
+
+    /**
+     * Imposta l'azione eseguita quando la coda di uscita, dopo essere stata congestionata, viene svuotata.
+     *
+     * @param listener L'azione da eseguire, sul thread che scrive sul canale
+     */
+    void setDrainListener(Runnable listener);
+
+    /**
+     * Esegue un calcolo costoso dell'handshake, come la decifratura RSA, e poi la sua continuazione
+     * sul thread della connessione. Finché la continuazione non è stata eseguita il gestore non riceve
+     * altri messaggi. Con un thread dedicato alla connessione il calcolo viene eseguito subito,
+     * su quello stesso thread.
+     *
+     * @param work Il calcolo, che restituisce la continuazione da eseguire sul thread della connessione
+     */
+    default void offload(Supplier<Runnable> work) {
+        work.get().run();
+    }
+
+    /**
+     * Chiude il canale verso il client.
+     *
+     * @throws IOException Se si verifica un errore durante la chiusura
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,37 @@
+package battaglia.tpsit.server;
+
+/**
+ * Calcolo dei punteggi Elo dei giocatori, aggiornati al termine di ogni manche.
+ * <p>
+ * Il punteggio atteso di un giocatore contro un avversario è {@code 1 / (1 + 10^((Rb - Ra) / 400))};
+ * dopo la manche il punteggio varia di {@code K * (esito - atteso)}, con esito 1 per la vittoria,
+ * 0,5 per il pareggio e 0 per la sconfitta. Un giocatore mai visto parte da {@value #INITIAL_RATING}.
+ * <p>
+ * Il punteggio è conservato nel {@link PlayerSlot} del giocatore. Un giocatore partecipa a una sola
+ * sessione alla volta, quindi i due aggiornamenti di una manche non entrano mai in conflitto con
+ * quelli di un'altra sessione.
+ */
+final class EloRatings {
+    static final double INITIAL_RATING = 1200;
+    private static final double K_FACTOR = 32;
+
+    private EloRatings() {
+    }
+
+    /**
+     * Aggiorna i punteggi dei due giocatori di una manche.
+     *
+     * @param player1 Il primo giocatore
+     * @param player2 Il secondo giocatore
+     * @param score1  Esito per il primo giocatore: 1 vittoria, 0,5 pareggio, 0 sconfitta
+     */
+    static void recordResult(PlayerSlot player1, PlayerSlot player2, double score1) {
+        double rating1 = player1.getRating();
+        double rating2 = player2.getRating();
+        double expected1 = 1.0 / (1.0 + Math.pow(10, (rating2 - rating1) / 400.0));
+        double delta = K_FACTOR * (score1 - expected1);
+
+        player1.setRating(rating1 + delta);
+        player2.setRating(rating2 - delta);
+    }
+}
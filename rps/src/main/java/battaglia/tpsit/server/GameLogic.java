@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import battaglia.tpsit.common.GameMoves;
 import battaglia.tpsit.common.GameResult;
+import battaglia.tpsit.common.RoundOutcome;
 
 /**
  * Classe che gestisce la logica di gioco.
@@ -24,17 +25,14 @@ public class GameLogic {
      *         Altrimenti, il vincitore sarà determinato in base alle regole del gioco.
      */
     public static GameResult determineResult(String player1, GameMoves move1, String player2, GameMoves move2) {
-        if (move1 == move2) {
+        RoundOutcome outcome = RoundOutcome.of(move1, move2);
+        if (outcome.isDraw()) {
             logger.info("Pareggio tra {} e {}: entrambi hanno scelto {}", player1, player2, move1);
-            return new GameResult(move1, move2);
-        } else if (move1.beats(move2)) {
-            String description = move1.getWinDescription(move2);
-            logger.info("{} batte {}: {} - {}", player1, player2, description, move1);
-            return new GameResult(player1, move1, move2, description);
+        } else if (outcome.isWin()) {
+            logger.info("{} batte {}: {} - {}", player1, player2, outcome.getDescription(), move1);
         } else {
-            String description = move2.getWinDescription(move1);
-            logger.info("{} batte {}: {} - {}", player2, player1, description, move2);
-            return new GameResult(player2, move2, move1, description);
+            logger.info("{} batte {}: {} - {}", player2, player1, outcome.getDescription(), move2);
         }
+        return outcome.toResult(player1, player2);
     }
-}
\ No newline at end of file
+}
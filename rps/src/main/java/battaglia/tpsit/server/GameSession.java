@@ -5,131 +5,284 @@ import org.slf4j.LoggerFactory;
 
 import battaglia.tpsit.common.GameMoves;
 import battaglia.tpsit.common.GameResult;
+import battaglia.tpsit.common.JsonCodec;
+import battaglia.tpsit.common.RoundOutcome;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Rappresenta una sessione di gioco tra due giocatori.
+ * Il ciclo di vita di ogni manche (in attesa, una mossa, entrambe le mosse, risolta, pronti)
+ * è una macchina a stati senza lock, codificata in un singolo {@link AtomicInteger}:
+ * <ul>
+ *     <li>bit 0-2: mossa del primo giocatore (0 = nessuna, altrimenti ordinale + 1)</li>
+ *     <li>bit 3-5: mossa del secondo giocatore</li>
+ *     <li>bit 6: manche risolta</li>
+ *     <li>bit 7-8: maschera dei giocatori pronti per la manche successiva</li>
+ *     <li>bit 9-31: numero della manche, che distingue le scadenze delle manche precedenti</li>
+ * </ul>
+ * Le transizioni avvengono con compare-and-set; il thread che completa una transizione
+ * invia i messaggi ai client senza alcun lock, così un client lento non blocca l'avversario.
+ * <p>
+ * Ogni manche ha un tempo massimo per le mosse, gestito dal timer condiviso del server:
+ * allo scadere la manche viene risolta a tavolino e la sessione termina.
+ * <p>
+ * I giocatori sono riferiti tramite il loro {@link PlayerSlot}: gli handler si leggono dallo slot
+ * e i nomi utente servono solo per i messaggi in uscita e i log.
  */
 public class GameSession {
     private static final Logger logger = LoggerFactory.getLogger(GameSession.class);
 
-    private String sessionId;
-    private String player1;
-    private String player2;
-    private Map<String, GameMoves> moves;
-    private boolean gameOver;
-    private volatile boolean movesProcessed;
-    private Server server;
-    private CountDownLatch movesLatch;
-    private Set<String> readyPlayers = new HashSet<>();
+    private static final int MOVE_BITS = 3;
+    private static final int MOVE_MASK = (1 << MOVE_BITS) - 1;
+    private static final int RESOLVED = 1 << 6;
+    private static final int READY_SHIFT = 7;
+    private static final int BOTH_READY = 0b11 << READY_SHIFT;
+    private static final int ROUND_SHIFT = 9;
+    private static final int ROUND_STATE_MASK = (1 << ROUND_SHIFT) - 1;
+    private static final GameMoves[] MOVES = GameMoves.values();
+
+    private final long sessionId;
+    private final PlayerSlot player1;
+    private final PlayerSlot player2;
+    private final Server server;
+    private final AtomicBoolean gameOver = new AtomicBoolean();
+    private final AtomicInteger state = new AtomicInteger();
+    private final AtomicBoolean startPending = new AtomicBoolean();
+    private volatile HashedWheelTimer.Timeout moveDeadline;
 
     /**
      * Costruttore per una nuova sessione di gioco.
      *
-     * @param sessionId ID della sessione
-     * @param player1   Nome del primo giocatore
-     * @param player2   Nome del secondo giocatore
+     * @param sessionId ID univoco della sessione
+     * @param player1   Il primo giocatore
+     * @param player2   Il secondo giocatore
      * @param server    Riferimento al server
      */
-    public GameSession(String sessionId, String player1, String player2, Server server) {
+    GameSession(long sessionId, PlayerSlot player1, PlayerSlot player2, Server server) {
         this.sessionId = sessionId;
         this.player1 = player1;
         this.player2 = player2;
-        this.moves = new HashMap<>();
-        this.gameOver = false;
-        this.movesProcessed = false;
         this.server = server;
-        this.movesLatch = new CountDownLatch(2); // Attende le mosse di entrambi i giocatori
     }
 
     /**
      * Registra che un giocatore è pronto per la prossima manche.
+     * Quando anche il secondo giocatore è pronto la sessione torna nello stato iniziale
+     * e a entrambi viene notificato l'inizio della nuova manche, appena nessuno dei due client
+     * è in ritardo nella lettura dei messaggi.
      *
-     * @param playerName Nome del giocatore
+     * @param playerId ID del giocatore
      */
-    public synchronized void playerReadyForNextRound(String playerName) {
-        readyPlayers.add(playerName);
+    public void playerReadyForNextRound(int playerId) {
+        int index = playerIndex(playerId);
+        if (index < 0) {
+            logger.warn("Il giocatore {} non appartiene alla sessione {}", playerId, sessionId);
+            return;
+        }
 
-        // Se entrambi i giocatori sono pronti, resetta la sessione
-        if (readyPlayers.size() == 2) {
-            resetMoves();
-            readyPlayers.clear();
-            logger.info("Entrambi i giocatori pronti per una nuova manche");
+        int readyBit = 1 << (READY_SHIFT + index);
+        int current;
+        int next;
+        boolean newRound;
+        do {
+            current = state.get();
+            if ((current & RESOLVED) == 0) {
+                logger.warn("Il giocatore {} è pronto ma la manche non è ancora conclusa",
+                        slotOf(index).getUsername());
+                return;
+            }
+            next = current | readyBit;
+            newRound = (next & BOTH_READY) == BOTH_READY;
+            if (newRound) {
+                next = nextRound(current);
+            }
+        } while (!state.compareAndSet(current, next));
 
-            // Notifica entrambi i client dell'inizio della nuova partita
-            ServerClientHandler handler1 = server.getConnectedClient(player1);
-            ServerClientHandler handler2 = server.getConnectedClient(player2);
+        if (newRound) {
+            logger.info("Entrambi i giocatori pronti per una nuova manche");
 
-            if (handler1 != null && handler2 != null) {
-                handler1.notifyGameStart(player2);
-                handler2.notifyGameStart(player1);
-            } else {
-                logger.warn("Uno dei client non è più connesso");
+            // Se uno dei client è in ritardo nella lettura la manche parte quando avrà smaltito la coda
+            startPending.set(true);
+            if (isCongested()) {
+                logger.info("Nuova manche della sessione {} sospesa: client in ritardo", sessionId);
             }
+            resumeIfPaused();
         }
     }
 
     /**
-     * Registra la mossa di un giocatore.
-     *
-     * @param playerName Nome del giocatore
-     * @param move       Mossa effettuata
+     * Avvia la manche sospesa, se nessuno dei due client è più in ritardo nella lettura.
+     * Viene invocato anche quando la coda di uscita di un giocatore torna vuota.
      */
-    public synchronized void registerMove(String playerName, GameMoves move) {
-        if (moves.containsKey(playerName)) {
-            logger.warn("Il giocatore {} ha già effettuato una mossa", playerName);
+    public void resumeIfPaused() {
+        if (!startPending.get() || isCongested() || !startPending.compareAndSet(true, false)) {
             return;
         }
 
-        moves.put(playerName, move);
-        logger.info("Giocatore {} ha scelto {}", playerName, move);
-        movesLatch.countDown();
+        // Notifica entrambi i client dell'inizio della nuova partita
+        ServerClientHandler handler1 = player1.getHandler();
+        ServerClientHandler handler2 = player2.getHandler();
 
-        // Se entrambi i giocatori hanno fatto la loro mossa, processa il risultato
-        if (moves.size() == 2 && !movesProcessed) {
-            processAndSendResults();
+        if (handler1 != null && handler2 != null) {
+            handler1.notifyGameStart(player2.getUsername());
+            handler2.notifyGameStart(player1.getUsername());
+            startMoveDeadline();
+        } else {
+            logger.warn("Uno dei client non è più connesso");
         }
     }
 
     /**
-     * Processa il risultato della partita e invia i risultati ai client.
+     * Pianifica sul timer del server la scadenza delle mosse della manche corrente.
+     * Va invocato dopo aver notificato l'inizio della manche a entrambi i giocatori.
+     * La scadenza viene annullata quando la manche viene risolta o la sessione termina,
+     * così il timer non conserva la sessione fino allo scadere.
      */
-    public synchronized void processAndSendResults() {
-        if (moves.size() != 2 || movesProcessed) {
-            return;
+    public void startMoveDeadline() {
+        long timeoutSeconds = server.getConfig().getMoveTimeoutSeconds();
+        if (timeoutSeconds > 0) {
+            int round = state.get() >>> ROUND_SHIFT;
+            HashedWheelTimer.Timeout deadline =
+                server.getTimer().schedule(() -> forfeitRound(round), timeoutSeconds, TimeUnit.SECONDS);
+            moveDeadline = deadline;
+            // Le mosse possono essere arrivate prima che la scadenza fosse memorizzata
+            int current = state.get();
+            if (gameOver.get() || (current >>> ROUND_SHIFT) != round || (current & RESOLVED) != 0) {
+                deadline.cancel();
+            }
+        }
+    }
+
+    /**
+     * Annulla la scadenza delle mosse della manche corrente, se è stata pianificata.
+     */
+    private void cancelMoveDeadline() {
+        HashedWheelTimer.Timeout deadline = moveDeadline;
+        if (deadline != null) {
+            deadline.cancel();
+        }
+    }
+
+    /**
+     * Risolve a tavolino una manche in cui almeno un giocatore non ha scelto la mossa in tempo.
+     * Chi ha scelto una mossa vince e torna in coda; chi non l'ha scelta resta fuori dalla coda
+     * finché non conferma di voler giocare ancora. La sessione viene chiusa in entrambi i casi.
+     *
+     * @param round Il numero della manche a cui si riferisce la scadenza
+     */
+    private void forfeitRound(int round) {
+        int current;
+        do {
+            current = state.get();
+            if (gameOver.get() || (current >>> ROUND_SHIFT) != round || (current & RESOLVED) != 0) {
+                return; // Manche già risolta o sessione terminata
+            }
+        } while (!state.compareAndSet(current, current | RESOLVED));
+
+        GameMoves move1 = moveOf(current, 0);
+        GameMoves move2 = moveOf(current, 1);
+        logger.info("Tempo scaduto nella sessione {}: manche decisa a tavolino", sessionId);
+        if ((move1 == null) != (move2 == null)) {
+            EloRatings.recordResult(player1, player2, move1 != null ? 1.0 : 0.0);
         }
 
-        try {
-            // Attendiamo che entrambi i giocatori completino le loro mosse
-            movesLatch.await();
+        // La sessione viene chiusa prima di inviare i risultati, così un READY arrivato subito dopo
+        // il risultato rimette in coda il giocatore invece di riaprire questa sessione
+        server.endGameSession(this, false, false);
 
-            // Otteniamo gli handler per entrambi i giocatori
-            ServerClientHandler handler1 = server.getConnectedClient(player1);
-            ServerClientHandler handler2 = server.getConnectedClient(player2);
+        String name1 = player1.getUsername();
+        String name2 = player2.getUsername();
+        ServerClientHandler handler1 = player1.getHandler();
+        ServerClientHandler handler2 = player2.getHandler();
+        if (handler1 != null) {
+            handler1.sendGameResult(buildForfeitResult(name1, move1, name2, move2));
+        }
+        if (handler2 != null) {
+            handler2.sendGameResult(buildForfeitResult(name2, move2, name1, move1));
+        }
 
-            if (handler1 != null && handler2 != null) {
-                // Invia risultato al giocatore 1
-                GameResult result1 = getResultForPlayer(player1);
-                handler1.sendGameResult(result1);
+        if (move1 != null) {
+            server.requeuePlayer(player1);
+        }
+        if (move2 != null) {
+            server.requeuePlayer(player2);
+        }
+    }
+
+    /**
+     * Verifica se almeno uno dei due client ha la coda di uscita oltre il budget.
+     *
+     * @return {@code true} se la sessione deve attendere
+     */
+    private boolean isCongested() {
+        ServerClientHandler handler1 = player1.getHandler();
+        ServerClientHandler handler2 = player2.getHandler();
+        return (handler1 != null && handler1.isCongested()) || (handler2 != null && handler2.isCongested());
+    }
 
-                // Invia risultato al giocatore 2
-                GameResult result2 = getResultForPlayer(player2);
-                handler2.sendGameResult(result2);
+    /**
+     * Registra la mossa di un giocatore.
+     * Il thread che inserisce la seconda mossa marca la manche come risolta e invia i risultati.
+     *
+     * @param playerId ID del giocatore
+     * @param move     Mossa effettuata
+     */
+    public void registerMove(int playerId, GameMoves move) {
+        int index = playerIndex(playerId);
+        if (index < 0) {
+            logger.warn("Il giocatore {} non appartiene alla sessione {}", playerId, sessionId);
+            return;
+        }
 
-                logger.debug("Risultati inviati a entrambi i giocatori");
-            } else {
-                logger.error("Impossibile inviare risultati, uno o entrambi gli handler non sono disponibili");
+        int shift = index * MOVE_BITS;
+        int current;
+        int next;
+        do {
+            current = state.get();
+            if ((current & RESOLVED) != 0 || ((current >>> shift) & MOVE_MASK) != 0) {
+                logger.warn("Il giocatore {} ha già effettuato una mossa", slotOf(index).getUsername());
+                return;
+            }
+            next = current | ((move.ordinal() + 1) << shift);
+            if (moveOf(next, 0) != null && moveOf(next, 1) != null) {
+                next |= RESOLVED;
             }
+        } while (!state.compareAndSet(current, next));
+        logger.info("Giocatore {} ha scelto {}", slotOf(index).getUsername(), move);
 
-            movesProcessed = true;
-        } catch (InterruptedException e) {
-            logger.error("Interruzione durante l'attesa delle mosse", e);
-            Thread.currentThread().interrupt();
+        // Se entrambi i giocatori hanno fatto la loro mossa, invia il risultato
+        if ((next & RESOLVED) != 0) {
+            cancelMoveDeadline();
+            RoundOutcome outcome = RoundOutcome.of(moveOf(next, 0), moveOf(next, 1));
+            EloRatings.recordResult(player1, player2, outcome.getScore());
+            sendResults(outcome);
+        }
+    }
+
+    /**
+     * Invia i risultati della manche ai client. Viene invocato una sola volta per manche,
+     * dal thread che ha effettuato la transizione verso lo stato risolto.
+     *
+     * @param outcome Esito della manche dal punto di vista del primo giocatore
+     */
+    private void sendResults(RoundOutcome outcome) {
+        // Otteniamo gli handler per entrambi i giocatori
+        ServerClientHandler handler1 = player1.getHandler();
+        ServerClientHandler handler2 = player2.getHandler();
+
+        if (handler1 != null && handler2 != null) {
+            // Il risultato ha lo stesso contenuto per entrambi i giocatori: viene composto una volta
+            // dal modello pre-serializzato dell'esito, inserendo solo il nome del vincitore
+            PlayerSlot winner = outcome.isDraw() ? null : outcome.isWin() ? player1 : player2;
+            byte[] resultJson = JsonCodec.writeResult(outcome, winner != null ? winner.getJsonUsername() : null);
+            handler1.sendGameResult(resultJson);
+            handler2.sendGameResult(resultJson);
+            logger.debug("Risultati inviati a entrambi i giocatori");
+        } else {
+            logger.error("Impossibile inviare risultati, uno o entrambi gli handler non sono disponibili");
         }
     }
 
@@ -138,49 +291,117 @@ public class GameSession {
      *
      * @return {@code true} se entrambi i giocatori hanno fatto la loro mossa e il risultato è stato processato
      */
-    public synchronized boolean bothPlayersMovedAndProcessed() {
-        return moves.size() == 2 && movesProcessed;
+    public boolean bothPlayersMovedAndProcessed() {
+        return (state.get() & RESOLVED) != 0;
     }
 
     /**
      * Ottiene il risultato della partita per un giocatore specifico.
      *
-     * @param playerName Nome del giocatore
-     * @return Risultato della partita
+     * @param playerId ID del giocatore
+     * @return Risultato della partita, o {@code null} se non entrambi i giocatori hanno mosso
      */
-    public synchronized GameResult getResultForPlayer(String playerName) {
-        if (moves.size() != 2) {
+    public GameResult getResultForPlayer(int playerId) {
+        int index = playerIndex(playerId);
+        int snapshot = state.get();
+        if (index < 0 || (snapshot & RESOLVED) == 0) {
             return null;
         }
 
-        String opponentName = playerName.equals(player1) ? player2 : player1;
-        GameMoves playerMove = moves.get(playerName);
-        GameMoves opponentMove = moves.get(opponentName);
+        return RoundOutcome.of(moveOf(snapshot, index), moveOf(snapshot, 1 - index))
+                .toResult(slotOf(index).getUsername(), slotOf(1 - index).getUsername());
+    }
 
-        if (playerMove.equals(opponentMove)) {
-            return new GameResult(playerMove, opponentMove);
-        } else if (playerMove.beats(opponentMove)) {
-            return new GameResult(playerName, playerMove, opponentMove, playerMove.getWinDescription(opponentMove));
+    /**
+     * Costruisce il risultato di una manche decisa a tavolino dal punto di vista di un giocatore.
+     *
+     * @param playerName   Nome del giocatore
+     * @param playerMove   Mossa del giocatore, o {@code null} se non l'ha scelta
+     * @param opponentName Nome dell'avversario
+     * @param opponentMove Mossa dell'avversario, o {@code null} se non l'ha scelta
+     * @return Il risultato della manche
+     */
+    private static GameResult buildForfeitResult(String playerName, GameMoves playerMove,
+                                                 String opponentName, GameMoves opponentMove) {
+        GameResult result;
+        if (playerMove != null) {
+            result = new GameResult(playerName, playerMove, null,
+                    "Vittoria a tavolino: " + opponentName + " non ha scelto una mossa in tempo");
+        } else if (opponentMove != null) {
+            result = new GameResult(opponentName, opponentMove, null,
+                    "Vittoria a tavolino: " + playerName + " non ha scelto una mossa in tempo");
         } else {
-            return new GameResult(opponentName, opponentMove, playerMove, opponentMove.getWinDescription(playerMove));
+            result = new GameResult(null, null, null, "Nessuno dei giocatori ha scelto una mossa in tempo");
         }
+        result.setForfeit(true);
+        return result;
+    }
+
+    /**
+     * Calcola lo stato iniziale della manche successiva: mosse e giocatori pronti azzerati,
+     * numero della manche incrementato.
+     *
+     * @param encodedState Lo stato corrente
+     * @return Lo stato della nuova manche
+     */
+    private static int nextRound(int encodedState) {
+        return (encodedState & ~ROUND_STATE_MASK) + (1 << ROUND_SHIFT);
+    }
+
+    /**
+     * Estrae la mossa di un giocatore da uno stato codificato.
+     *
+     * @param encodedState Lo stato della sessione
+     * @param index        Indice del giocatore (0 o 1)
+     * @return La mossa, o {@code null} se il giocatore non ha ancora mosso
+     */
+    private static GameMoves moveOf(int encodedState, int index) {
+        int slot = (encodedState >>> (index * MOVE_BITS)) & MOVE_MASK;
+        return slot == 0 ? null : MOVES[slot - 1];
+    }
+
+    /**
+     * Restituisce l'indice di un giocatore nella sessione.
+     *
+     * @param playerId ID del giocatore
+     * @return 0 per il primo giocatore, 1 per il secondo, -1 se non appartiene alla sessione
+     */
+    private int playerIndex(int playerId) {
+        if (player1.getId() == playerId) {
+            return 0;
+        }
+        return player2.getId() == playerId ? 1 : -1;
+    }
+
+    /**
+     * Restituisce lo slot di un giocatore dato il suo indice nella sessione.
+     *
+     * @param index Indice del giocatore (0 o 1)
+     * @return Lo slot del giocatore
+     */
+    private PlayerSlot slotOf(int index) {
+        return index == 0 ? player1 : player2;
     }
 
     /**
      * Resetta le mosse per una nuova manche.
      */
-    public synchronized void resetMoves() {
-        moves.clear();
-        movesProcessed = false;
-        movesLatch = new CountDownLatch(2); // Resetta il latch
+    public void resetMoves() {
+        state.updateAndGet(GameSession::nextRound);
         logger.debug("Sessione di gioco resettata per una nuova manche");
     }
 
     /**
      * Termina la sessione di gioco.
+     *
+     * @return {@code true} se la sessione è stata terminata da questa chiamata, {@code false} se lo era già
      */
-    public synchronized void endGame() {
-        gameOver = true;
+    public boolean endGame() {
+        if (!gameOver.compareAndSet(false, true)) {
+            return false;
+        }
+        cancelMoveDeadline();
+        return true;
     }
 
     /**
@@ -188,26 +409,44 @@ public class GameSession {
      *
      * @return {@code true} se la sessione è terminata
      */
-    public synchronized boolean isGameOver() {
-        return gameOver;
+    public boolean isGameOver() {
+        return gameOver.get();
     }
 
     /**
      * Verifica se un giocatore è in questa sessione.
      *
-     * @param playerName Nome del giocatore
+     * @param playerId ID del giocatore
      * @return {@code true} se il giocatore è in questa sessione
      */
-    public boolean hasPlayer(String playerName) {
-        return player1.equals(playerName) || player2.equals(playerName);
+    public boolean hasPlayer(int playerId) {
+        return playerIndex(playerId) >= 0;
+    }
+
+    /**
+     * Ottiene il primo giocatore.
+     *
+     * @return Lo slot del primo giocatore
+     */
+    PlayerSlot getPlayer1() {
+        return player1;
+    }
+
+    /**
+     * Ottiene il secondo giocatore.
+     *
+     * @return Lo slot del secondo giocatore
+     */
+    PlayerSlot getPlayer2() {
+        return player2;
     }
 
     /**
-     * Ottiene l'ID della sessione.
+     * Ottiene l'ID della sessione, univoco per tutta la vita del server.
      *
      * @return ID della sessione
      */
-    public String getSessionId() {
+    public long getSessionId() {
         return sessionId;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,248 @@
+package battaglia.tpsit.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timer a ruota con hash per gestire un gran numero di scadenze con un solo thread.
+ * <p>
+ * La ruota è un array circolare di bucket: a ogni tick il thread del timer avanza di un bucket
+ * ed esegue le scadenze arrivate a termine. Una scadenza più lontana di un giro completo resta
+ * nel bucket con un contatore di giri residui. Inserimento e cancellazione costano O(1) e non
+ * serve un task schedulato per ogni connessione, quindi il timer regge centinaia di migliaia
+ * di scadenze con una precisione pari alla durata del tick.
+ * <p>
+ * Una scadenza cancellata rilascia subito il suo task e viene tolta dal bucket al tick successivo,
+ * così gli oggetti raggiungibili dal task non restano in memoria fino alla scadenza originale.
+ * <p>
+ * I task vengono eseguiti sul thread del timer e devono quindi essere brevi e non bloccanti.
+ */
+class HashedWheelTimer {
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> pending;
+    private final Queue<Timeout> cancelled;
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running;
+    private long tick;
+
+    /**
+     * Costruttore del timer, che avvia subito il thread della ruota.
+     *
+     * @param tickDuration La durata di un tick
+     * @param unit         L'unità di misura della durata
+     * @param wheelSize    Il numero di bucket, arrotondato alla potenza di due successiva
+     */
+    HashedWheelTimer(long tickDuration, TimeUnit unit, int wheelSize) {
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.startTime = System.nanoTime();
+        this.running = true;
+        this.worker = new Thread(this::run, "rps-timer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Pianifica l'esecuzione di un task dopo un certo ritardo.
+     *
+     * @param task  Il task da eseguire sul thread del timer
+     * @param delay Il ritardo
+     * @param unit  L'unità di misura del ritardo
+     * @return La scadenza, che può essere cancellata
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Ferma il thread del timer; le scadenze non ancora eseguite vengono scartate.
+     */
+    void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * Ciclo del thread del timer: attende il tick successivo, inserisce le nuove scadenze,
+     * toglie dalla ruota quelle cancellate e processa il bucket corrente.
+     */
+    private void run() {
+        while (running) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        break;
+                    }
+                }
+                continue;
+            }
+
+            transferPending();
+            removeCancelled();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    /**
+     * Sposta nei bucket della ruota le scadenze aggiunte dagli altri thread.
+     */
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.cancelled) {
+                continue;
+            }
+
+            long expiryTick = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+            wheel[(int) (expiryTick & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Toglie dai bucket le scadenze cancellate dagli altri thread.
+     * Quelle non ancora trasferite nella ruota vengono scartate da {@link #transferPending()}.
+     */
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Scadenza pianificata sul timer.
+     */
+    static final class Timeout {
+        private final HashedWheelTimer timer;
+        private final long deadline;
+        private volatile Runnable task;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancella la scadenza; il task non verrà eseguito se non è già partito.
+         * Il task viene rilasciato subito e la scadenza esce dalla ruota al tick successivo.
+         */
+        void cancel() {
+            if (cancelled) {
+                return;
+            }
+            task = null;
+            cancelled = true;
+            timer.cancelled.add(this);
+        }
+    }
+
+    /**
+     * Bucket della ruota: lista doppiamente collegata accessibile solo dal thread del timer.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        /**
+         * Aggiunge una scadenza in fondo al bucket.
+         *
+         * @param timeout La scadenza
+         */
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        /**
+         * Esegue le scadenze arrivate a termine e decrementa i giri residui delle altre.
+         */
+        void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.cancelled) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    Runnable task = timeout.task;
+                    timeout.task = null;
+                    try {
+                        if (task != null) {
+                            task.run(); // Nullo se cancellato dopo il controllo precedente
+                        }
+                    } catch (RuntimeException e) {
+                        logger.error("Errore durante l'esecuzione di un task del timer", e);
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        /**
+         * Rimuove una scadenza dal bucket.
+         *
+         * @param timeout La scadenza
+         */
+        private void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.next = null;
+            timeout.prev = null;
+            timeout.bucket = null;
+        }
+    }
+}
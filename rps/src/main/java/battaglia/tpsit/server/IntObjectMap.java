@@ -0,0 +1,189 @@
+package battaglia.tpsit.server;
+
+import java.util.Arrays;
+
+/**
+ * Mappa da chiavi {@code int} non negative a oggetti, con indirizzamento aperto e scansione lineare.
+ * <p>
+ * Chiavi e valori stanno in due array paralleli, quindi a differenza di una {@link java.util.HashMap}
+ * non vengono allocati né {@link Integer} né nodi a ogni inserimento. La rimozione sposta all'indietro
+ * gli elementi successivi della stessa sequenza invece di lasciare marcatori, così le ricerche restano
+ * brevi anche dopo molti inserimenti e rimozioni.
+ * <p>
+ * La classe non è thread-safe.
+ *
+ * @param <V> Il tipo dei valori
+ */
+final class IntObjectMap<V> {
+    private static final int FREE = -1;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * Costruttore della mappa.
+     *
+     * @param expectedSize Il numero di elementi previsto
+     */
+    IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Restituisce il valore associato a una chiave.
+     *
+     * @param key La chiave, non negativa
+     * @return Il valore, o {@code null} se la chiave non è presente
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * Indica se una chiave è presente.
+     *
+     * @param key La chiave, non negativa
+     * @return {@code true} se la chiave è presente
+     */
+    boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Associa un valore a una chiave, sostituendo quello eventualmente presente.
+     *
+     * @param key   La chiave, non negativa
+     * @param value Il valore
+     * @return Il valore precedente, o {@code null} se la chiave non era presente
+     */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Chiave negativa: " + key);
+        }
+
+        int index = slotOf(key);
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            resize();
+        }
+        return null;
+    }
+
+    /**
+     * Rimuove una chiave.
+     *
+     * @param key La chiave, non negativa
+     * @return Il valore rimosso, o {@code null} se la chiave non era presente
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+
+        V removed = (V) values[index];
+        size--;
+
+        // Sposta all'indietro gli elementi che altrimenti non sarebbero più raggiungibili
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = slotOf(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = FREE;
+        values[hole] = null;
+        return removed;
+    }
+
+    /**
+     * Restituisce il numero di elementi.
+     *
+     * @return Il numero di elementi
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Cerca la posizione di una chiave.
+     *
+     * @param key La chiave
+     * @return La posizione, o -1 se la chiave non è presente
+     */
+    private int indexOf(int key) {
+        int index = slotOf(key);
+        int current;
+        while ((current = keys[index]) != FREE) {
+            if (current == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Calcola la posizione iniziale di una chiave, mescolandone i bit perché gli ID sono consecutivi.
+     *
+     * @param key La chiave
+     * @return La posizione iniziale
+     */
+    private int slotOf(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Raddoppia la capacità e reinserisce tutti gli elementi.
+     */
+    @SuppressWarnings("unchecked")
+    private void resize() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(keys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Alloca gli array per una certa capacità.
+     *
+     * @param capacity La capacità, potenza di due
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+}
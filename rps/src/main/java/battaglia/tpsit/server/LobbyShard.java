@@ -0,0 +1,52 @@
+package battaglia.tpsit.server;
+
+/**
+ * Partizione della lobby del server.
+ * <p>
+ * Ogni giocatore appartiene alla partizione scelta dal suo ID e lì entra in coda. Ogni partizione
+ * ha la propria coda di attesa, servita da un {@link MatchmakingService} con un thread dedicato,
+ * così il matchmaking di partizioni diverse non si contende mai le stesse strutture dati.
+ * Handler e sessione corrente di ogni giocatore stanno nel suo {@link PlayerSlot}, condiviso
+ * da tutte le partizioni, quindi una sessione può unire giocatori di partizioni diverse dopo
+ * un ribilanciamento senza tabelle da tenere allineate.
+ */
+class LobbyShard {
+    private final int index;
+    private MatchmakingService matchmaking;
+
+    /**
+     * Costruttore della partizione.
+     *
+     * @param index L'indice della partizione
+     */
+    LobbyShard(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Restituisce l'indice della partizione.
+     *
+     * @return L'indice della partizione
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Restituisce il servizio di matchmaking della partizione.
+     *
+     * @return Il servizio di matchmaking
+     */
+    MatchmakingService getMatchmaking() {
+        return matchmaking;
+    }
+
+    /**
+     * Imposta il servizio di matchmaking della partizione.
+     *
+     * @param matchmaking Il servizio di matchmaking
+     */
+    void setMatchmaking(MatchmakingService matchmaking) {
+        this.matchmaking = matchmaking;
+    }
+}
@@ -0,0 +1,135 @@
+package battaglia.tpsit.server;
+
+/**
+ * Metriche del servizio di matchmaking, aggiornate a ogni tick.
+ * Vengono scritte solo dal thread del servizio, quindi bastano campi {@code volatile}
+ * perché gli altri thread ne leggano un valore coerente.
+ */
+public class MatchmakingMetrics {
+    private volatile long ticks;
+    private volatile long pairsMade;
+    private volatile long playersEnqueued;
+    private volatile long playersMigrated;
+    private volatile int lastQueueDepth;
+    private volatile int maxQueueDepth;
+    private volatile int lastPairs;
+    private volatile long lastTickNanos;
+    private volatile long maxTickNanos;
+
+    /**
+     * Registra l'esito di un tick.
+     *
+     * @param queueDepth Giocatori rimasti in coda alla fine del tick
+     * @param enqueued   Giocatori entrati in coda durante il tick
+     * @param pairs      Coppie formate durante il tick
+     * @param tickNanos  Durata del tick, in nanosecondi
+     */
+    void recordTick(int queueDepth, int enqueued, int pairs, long tickNanos) {
+        ticks++;
+        pairsMade += pairs;
+        playersEnqueued += enqueued;
+        lastQueueDepth = queueDepth;
+        maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+        lastPairs = pairs;
+        lastTickNanos = tickNanos;
+        maxTickNanos = Math.max(maxTickNanos, tickNanos);
+    }
+
+    /**
+     * Registra un giocatore ceduto a un'altra partizione perché la coda si era esaurita.
+     */
+    void recordMigration() {
+        playersMigrated++;
+    }
+
+    /**
+     * Restituisce il numero di tick eseguiti.
+     *
+     * @return Il numero di tick
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Restituisce il numero totale di coppie formate.
+     *
+     * @return Il numero di coppie
+     */
+    public long getPairsMade() {
+        return pairsMade;
+    }
+
+    /**
+     * Restituisce il numero totale di giocatori entrati in coda.
+     *
+     * @return Il numero di ingressi in coda
+     */
+    public long getPlayersEnqueued() {
+        return playersEnqueued;
+    }
+
+    /**
+     * Restituisce il numero di giocatori ceduti ad altre partizioni.
+     *
+     * @return Il numero di giocatori ceduti
+     */
+    public long getPlayersMigrated() {
+        return playersMigrated;
+    }
+
+    /**
+     * Restituisce i giocatori in coda alla fine dell'ultimo tick.
+     *
+     * @return La profondità della coda
+     */
+    public int getLastQueueDepth() {
+        return lastQueueDepth;
+    }
+
+    /**
+     * Restituisce la profondità massima raggiunta dalla coda alla fine di un tick.
+     *
+     * @return La profondità massima della coda
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Restituisce le coppie formate nell'ultimo tick.
+     *
+     * @return Il numero di coppie dell'ultimo tick
+     */
+    public int getLastPairs() {
+        return lastPairs;
+    }
+
+    /**
+     * Restituisce la durata dell'ultimo tick.
+     *
+     * @return La durata in nanosecondi
+     */
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    /**
+     * Restituisce la durata massima di un tick.
+     *
+     * @return La durata massima in nanosecondi
+     */
+    public long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "tick=" + getTicks()
+                + ", ingressi in coda=" + getPlayersEnqueued()
+                + ", coppie=" + getPairsMade()
+                + ", ceduti=" + getPlayersMigrated()
+                + ", coda=" + getLastQueueDepth() + " (max " + getMaxQueueDepth() + ")"
+                + ", tick max=" + getMaxTickNanos() / 1_000 + " us";
+    }
+}
@@ -0,0 +1,236 @@
+package battaglia.tpsit.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Servizio di matchmaking di una {@link LobbyShard}, eseguito su un thread dedicato a tick regolari.
+ * <p>
+ * I thread dei client non toccano la coda di attesa: si limitano a segnalare ingressi e uscite
+ * in code non bloccanti. A ogni tick il thread del servizio raccoglie tutti i giocatori arrivati
+ * dall'ultimo tick, li accoppia in un'unica passata sul {@link RatingMatchmaker}, di cui è l'unico
+ * utilizzatore e che quindi non richiede lock, e solo alla fine notifica in blocco l'inizio delle
+ * nuove partite. Durante un picco di accessi il lavoro viene così raggruppato per tick invece di
+ * contendere un lock a ogni connessione, e il costo in CPU resta prevedibile.
+ * <p>
+ * Una volta al secondo il tick riprova ad accoppiare anche i giocatori già in coda, per applicare
+ * l'allargamento dell'intervallo di punteggio con l'attesa. Se dopo questa passata nella partizione
+ * resta un solo giocatore, la coda si è esaurita: il giocatore viene ceduto alla partizione con
+ * la coda più lunga, dove ha più probabilità di trovare un avversario.
+ * <p>
+ * Le code di ingresso e uscita trasportano gli {@link PlayerSlot} dei giocatori, mentre la coda di
+ * attesa lavora solo con gli ID: la disponibilità di un giocatore si legge dal suo slot senza
+ * cercarne il nome in alcuna mappa.
+ */
+class MatchmakingService {
+    private static final Logger logger = LoggerFactory.getLogger(MatchmakingService.class);
+    private static final long SWEEP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Server server;
+    private final LobbyShard shard;
+    private final RatingMatchmaker matchmaker;
+    private final long tickNanos;
+    private final Queue<PlayerSlot> joins;
+    private final Queue<PlayerSlot> leaves;
+    private final IntPredicate available;
+    private int[] arrived;
+    private final MatchmakingMetrics metrics;
+    private final Thread worker;
+    private volatile boolean running;
+    private long nextSweep;
+
+    /**
+     * Costruttore del servizio, che avvia subito il thread del matchmaking.
+     *
+     * @param server     Il server a cui appartengono le sessioni
+     * @param shard      La partizione della lobby servita
+     * @param matchmaker La coda di attesa, usata solo dal thread del servizio
+     * @param tickMillis L'intervallo tra due tick, in millisecondi
+     */
+    MatchmakingService(Server server, LobbyShard shard, RatingMatchmaker matchmaker, long tickMillis) {
+        this.server = server;
+        this.shard = shard;
+        this.matchmaker = matchmaker;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.joins = new ConcurrentLinkedQueue<>();
+        this.leaves = new ConcurrentLinkedQueue<>();
+        this.arrived = new int[64];
+        this.available = id -> {
+            PlayerSlot player = server.getPlayer(id);
+            return player != null && player.isAvailable();
+        };
+        this.metrics = new MatchmakingMetrics();
+        this.running = true;
+        this.nextSweep = System.nanoTime() + SWEEP_NANOS;
+        this.worker = new Thread(this::run, "rps-matchmaking-" + shard.getIndex());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Chiede di inserire un giocatore in coda al prossimo tick.
+     * Lo slot ricorda questa partizione, così un'uscita successiva viene inviata qui.
+     *
+     * @param player Il giocatore
+     */
+    void enqueue(PlayerSlot player) {
+        player.setQueueShard(shard);
+        joins.add(player);
+    }
+
+    /**
+     * Chiede di rimuovere dalla coda un giocatore disconnesso al prossimo tick.
+     *
+     * @param player Il giocatore
+     */
+    void remove(PlayerSlot player) {
+        leaves.add(player);
+    }
+
+    /**
+     * Restituisce le metriche del servizio.
+     *
+     * @return Le metriche per tick
+     */
+    MatchmakingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Ferma il thread del servizio; i giocatori ancora in coda vengono scartati.
+     */
+    void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * Ciclo del thread del servizio: esegue un tick e attende il successivo.
+     */
+    private void run() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            long sleepNanos = nextTick - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        break;
+                    }
+                }
+                continue;
+            }
+
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                logger.error("Errore durante il tick del matchmaking", e);
+            }
+            nextTick += tickNanos;
+        }
+    }
+
+    /**
+     * Esegue un tick: aggiorna la coda, forma le coppie e notifica le nuove partite.
+     */
+    private void tick() {
+        long started = System.nanoTime();
+
+        PlayerSlot player;
+        while ((player = leaves.poll()) != null) {
+            matchmaker.remove(player.getId());
+        }
+
+        int arrivedCount = 0;
+        while ((player = joins.poll()) != null) {
+            if (player.isAvailable() && matchmaker.add(player.getId(), player.getRating(), started)) {
+                if (arrivedCount == arrived.length) {
+                    arrived = Arrays.copyOf(arrived, arrived.length * 2);
+                }
+                arrived[arrivedCount++] = player.getId();
+            }
+        }
+
+        // Prima i nuovi arrivi, poi una volta al secondo tutti i giocatori in attesa
+        List<GameSession> sessions = new ArrayList<>();
+        for (int i = 0; i < arrivedCount; i++) {
+            RatingMatchmaker.Match match = matchmaker.match(arrived[i], started, available);
+            if (match != null) {
+                addSession(sessions, match);
+            }
+        }
+        if (started - nextSweep >= 0) {
+            for (RatingMatchmaker.Match match : matchmaker.matchAll(started, available)) {
+                addSession(sessions, match);
+            }
+            nextSweep = started + SWEEP_NANOS;
+            if (matchmaker.size() == 1) {
+                rebalance();
+            }
+        }
+
+        // Notifiche in blocco, dopo aver formato tutte le coppie del tick
+        for (GameSession session : sessions) {
+            server.startGameSession(session);
+        }
+
+        long elapsed = System.nanoTime() - started;
+        metrics.recordTick(matchmaker.size(), arrivedCount, sessions.size(), elapsed);
+        if (!sessions.isEmpty()) {
+            logger.debug("Tick del matchmaking {}: {} arrivi, {} coppie, {} in coda, {} us",
+                    shard.getIndex(), arrivedCount, sessions.size(), matchmaker.size(), elapsed / 1_000);
+        }
+    }
+
+    /**
+     * Crea la sessione per una coppia, se entrambi i giocatori sono ancora liberi.
+     *
+     * @param sessions Le sessioni create nel tick
+     * @param match    La coppia di giocatori
+     */
+    private void addSession(List<GameSession> sessions, RatingMatchmaker.Match match) {
+        GameSession session = server.createGameSession(match);
+        if (session != null) {
+            sessions.add(session);
+        }
+    }
+
+    /**
+     * Cede l'unico giocatore rimasto in coda alla partizione con la coda più lunga.
+     * Il giocatore viene ceduto solo a una coda più lunga, o lunga uguale ma di indice minore,
+     * così due partizioni con un giocatore ciascuno non se li scambiano a vicenda.
+     */
+    private void rebalance() {
+        LobbyShard target = null;
+        int targetDepth = 0;
+        for (LobbyShard candidate : server.getShards()) {
+            if (candidate == shard || candidate.getMatchmaking() == null) {
+                continue; // La partizione stessa, o una non ancora avviata
+            }
+            int depth = candidate.getMatchmaking().getMetrics().getLastQueueDepth();
+            boolean preferred = depth > 1 || (depth == 1 && candidate.getIndex() < shard.getIndex());
+            if (preferred && depth > targetDepth) {
+                target = candidate;
+                targetDepth = depth;
+            }
+        }
+        if (target == null) {
+            return;
+        }
+
+        PlayerSlot player = server.getPlayer(matchmaker.pollOldest());
+        target.getMatchmaking().enqueue(player);
+        metrics.recordMigration();
+        logger.debug("Giocatore {} ceduto dalla partizione {} alla {}",
+                player.getUsername(), shard.getIndex(), target.getIndex());
+    }
+}
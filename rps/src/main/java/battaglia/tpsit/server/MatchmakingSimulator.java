@@ -0,0 +1,190 @@
+package battaglia.tpsit.server;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulatore del matchmaking per punteggio, eseguibile senza rete né client.
+ * <p>
+ * La coda viene mantenuta a una profondità costante con giocatori dai punteggi distribuiti in modo
+ * normale, come durante un picco di connessioni che dura nel tempo: all'inizio di ogni tick simulato
+ * la coda viene riportata alla profondità richiesta con nuovi ingressi che attendono la passata.
+ * Nello stesso tick arrivano nuovi giocatori a ritmo costante, che cercano subito un avversario
+ * come fa il server, e una volta al secondo viene eseguita la passata che applica l'allargamento
+ * dell'intervallo. Così il costo reale di ogni ricerca viene misurato con la coda alla profondità
+ * richiesta e non solo dopo che la prima passata l'ha svuotata. Il tempo è simulato, quindi le attese
+ * riportate non dipendono dalla velocità della macchina; il tempo reale speso nel matchmaker
+ * viene misurato a parte.
+ * <p>
+ * Uso: {@code MatchmakingSimulator [in coda] [arrivi al secondo] [secondi] [range] [allargamento]},
+ * con valori predefiniti 10000 giocatori in coda, 1000 arrivi al secondo per 120 secondi simulati
+ * e i parametri di {@link ServerConfig}.
+ */
+public final class MatchmakingSimulator {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SWEEP_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double MEAN_RATING = 1500;
+    private static final double RATING_DEVIATION = 300;
+
+    private MatchmakingSimulator() {
+    }
+
+    /**
+     * Esegue la simulazione e stampa le statistiche su attese e differenze di punteggio.
+     *
+     * @param args Giocatori in coda, arrivi al secondo, secondi simulati, range iniziale e allargamento al secondo
+     */
+    public static void main(String[] args) {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int arrivalsPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 120;
+        double range = args.length > 3 ? Double.parseDouble(args[3]) : ServerConfig.DEFAULT_MATCH_RANGE;
+        double widen = args.length > 4 ? Double.parseDouble(args[4]) : ServerConfig.DEFAULT_MATCH_WIDEN_PER_SECOND;
+
+        RatingMatchmaker matchmaker = new RatingMatchmaker(Server.RATING_BUCKET_WIDTH, range, widen,
+                Server.MAX_MATCH_RANGE);
+        Random random = new Random(42);
+        Statistics stats = new Statistics();
+        int nextId = 0;
+        long now = 0;
+        long nextSweep = SWEEP_NANOS;
+        long end = TimeUnit.SECONDS.toNanos(seconds);
+        int arrivalsPerTick = (int) (arrivalsPerSecond * TICK_NANOS / SWEEP_NANOS);
+        long queuedSamples = 0;
+        long queuedTotal = 0;
+
+        while (now < end) {
+            // Gli ingressi che riportano la coda alla profondità richiesta attendono la passata
+            while (matchmaker.size() < players) {
+                matchmaker.add(nextId++, MEAN_RATING + random.nextGaussian() * RATING_DEVIATION, now);
+            }
+
+            for (int i = 0; i < arrivalsPerTick; i++) {
+                int playerId = nextId++;
+                double rating = MEAN_RATING + random.nextGaussian() * RATING_DEVIATION;
+                matchmaker.add(playerId, rating, now);
+
+                int depth = matchmaker.size();
+                long started = System.nanoTime();
+                RatingMatchmaker.Match match = matchmaker.match(playerId, now, id -> true);
+                stats.recordCall(System.nanoTime() - started, depth);
+                if (match != null) {
+                    stats.recordMatch(match);
+                }
+            }
+
+            if (now >= nextSweep) {
+                queuedTotal += matchmaker.size();
+                queuedSamples++;
+                long started = System.nanoTime();
+                List<RatingMatchmaker.Match> matches = matchmaker.matchAll(now, id -> true);
+                stats.recordSweep(System.nanoTime() - started);
+                for (RatingMatchmaker.Match match : matches) {
+                    stats.recordMatch(match);
+                }
+                nextSweep += SWEEP_NANOS;
+            }
+            now += TICK_NANOS;
+        }
+
+        System.out.printf("Profondità della coda: %d, arrivi: %d/s, secondi simulati: %d, range %.0f +%.0f/s%n",
+                players, arrivalsPerSecond, seconds, range, widen);
+        System.out.printf("Giocatori in coda prima della passata: media %.0f%n",
+                (double) queuedTotal / Math.max(1, queuedSamples));
+        stats.print();
+    }
+
+    /**
+     * Accumulatore delle statistiche della simulazione.
+     */
+    private static final class Statistics {
+        private long[] waits = new long[1024];
+        private int waitCount;
+        private long matches;
+        private double totalGap;
+        private double maxGap;
+        private long callNanos;
+        private long calls;
+        private long callDepth;
+        private long sweepNanos;
+        private long sweeps;
+
+        /**
+         * Registra una partita trovata.
+         *
+         * @param match La partita
+         */
+        void recordMatch(RatingMatchmaker.Match match) {
+            matches++;
+            totalGap += match.getRatingGap();
+            maxGap = Math.max(maxGap, match.getRatingGap());
+            addWait(match.getWaitNanos1());
+            addWait(match.getWaitNanos2());
+        }
+
+        /**
+         * Registra la durata reale di una ricerca per un nuovo arrivo.
+         *
+         * @param nanos La durata in nanosecondi
+         * @param depth Il numero di giocatori in coda al momento della ricerca
+         */
+        void recordCall(long nanos, int depth) {
+            callNanos += nanos;
+            callDepth += depth;
+            calls++;
+        }
+
+        /**
+         * Registra la durata reale di una passata completa.
+         *
+         * @param nanos La durata in nanosecondi
+         */
+        void recordSweep(long nanos) {
+            sweepNanos += nanos;
+            sweeps++;
+        }
+
+        /**
+         * Stampa le statistiche raccolte.
+         */
+        void print() {
+            long[] sorted = Arrays.copyOf(waits, waitCount);
+            Arrays.sort(sorted);
+            double totalWait = 0;
+            for (long wait : sorted) {
+                totalWait += wait;
+            }
+
+            System.out.printf("Partite: %d, giocatori accoppiati: %d%n", matches, waitCount);
+            System.out.printf("Attesa media: %.2f s, mediana: %.2f s, p95: %.2f s, massima: %.2f s%n",
+                    seconds(totalWait / Math.max(1, waitCount)), seconds(percentile(sorted, 0.50)),
+                    seconds(percentile(sorted, 0.95)), seconds(percentile(sorted, 1.0)));
+            System.out.printf("Differenza di punteggio media: %.1f, massima: %.1f%n",
+                    totalGap / Math.max(1, matches), maxGap);
+            System.out.printf("Costo reale: %.2f us per ricerca con %.0f giocatori in coda, %.2f ms per passata%n",
+                    callNanos / 1_000.0 / Math.max(1, calls), (double) callDepth / Math.max(1, calls),
+                    sweepNanos / 1_000_000.0 / Math.max(1, sweeps));
+        }
+
+        private void addWait(long nanos) {
+            if (waitCount == waits.length) {
+                waits = Arrays.copyOf(waits, waitCount * 2);
+            }
+            waits[waitCount++] = nanos;
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+
+        private static double seconds(double nanos) {
+            return nanos / 1_000_000_000.0;
+        }
+    }
+}
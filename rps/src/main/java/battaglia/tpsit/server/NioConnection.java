@@ -0,0 +1,258 @@
+package battaglia.tpsit.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import battaglia.tpsit.common.MessageCodec;
+
+/**
+ * Connessione non bloccante gestita da un {@link NioEventLoop}.
+ * Conserva i byte dei frame incompleti finché il codec del gestore non può decodificarli
+ * e accoda i frame in uscita in una {@link OutboundQueue} limitata, scrivendoli sul canale
+ * solo quando il socket è pronto. I calcoli costosi dell'handshake vengono eseguiti da un executor
+ * separato, così non fermano l'event loop e le altre connessioni che serve.
+ */
+class NioConnection implements ClientTransport {
+    private static final Logger logger = LoggerFactory.getLogger(NioConnection.class);
+    private static final int INITIAL_INBOUND_SIZE = 256;
+    private static final int MAX_INBOUND_SIZE = 2 * MessageCodec.MAX_FRAME_SIZE;
+
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final OutboundQueue outbound;
+    private final Executor offloadExecutor;
+    private final AtomicBoolean flushScheduled;
+    private final AtomicBoolean closed;
+    private ServerClientHandler handler;
+    private volatile Runnable drainListener;
+    private ByteBuffer inbound;
+
+    /**
+     * Costruttore della connessione.
+     *
+     * @param loop    L'event loop proprietario
+     * @param channel Il canale del client, già in modalità non bloccante
+     * @param key     La chiave di selezione registrata sull'event loop
+     * @param outbound La coda dei frame in attesa di essere scritti
+     * @param offloadExecutor L'executor per i calcoli dell'handshake
+     */
+    NioConnection(NioEventLoop loop, SocketChannel channel, SelectionKey key, OutboundQueue outbound,
+                  Executor offloadExecutor) {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.outbound = outbound;
+        this.offloadExecutor = offloadExecutor;
+        this.flushScheduled = new AtomicBoolean(false);
+        this.closed = new AtomicBoolean(false);
+        this.inbound = ByteBuffer.allocate(INITIAL_INBOUND_SIZE);
+    }
+
+    /**
+     * Imposta il gestore del protocollo associato alla connessione.
+     *
+     * @param handler Il gestore del client
+     */
+    void setHandler(ServerClientHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Legge i dati disponibili sul canale e li consegna al gestore, che decodifica ogni frame completo.
+     * Viene invocato solo dal thread dell'event loop.
+     */
+    void onReadable() {
+        ByteBuffer buffer = loop.readBuffer();
+        buffer.clear();
+
+        int read;
+        try {
+            read = channel.read(buffer);
+        } catch (IOException e) {
+            logger.debug("Errore durante la lettura dal canale", e);
+            handler.closeConnection();
+            return;
+        }
+
+        if (read < 0) {
+            handler.closeConnection(); // Client disconnesso
+            return;
+        }
+
+        buffer.flip();
+        if (!ensureInboundCapacity(buffer.remaining())) {
+            logger.warn("Frame troppo lungo ricevuto, chiusura della connessione");
+            handler.closeConnection();
+            return;
+        }
+
+        inbound.put(buffer);
+        inbound.flip();
+        handler.handleInbound(inbound);
+        inbound.compact();
+    }
+
+    /**
+     * Garantisce che il buffer dei frame incompleti possa accogliere altri byte,
+     * ingrandendolo se necessario.
+     *
+     * @param additional Il numero di byte da aggiungere
+     * @return {@code false} se si supererebbe la dimensione massima consentita
+     */
+    private boolean ensureInboundCapacity(int additional) {
+        int required = inbound.position() + additional;
+        if (required <= inbound.capacity()) {
+            return true;
+        }
+        if (required > MAX_INBOUND_SIZE) {
+            return false;
+        }
+
+        ByteBuffer larger = ByteBuffer.allocate(Math.min(Math.max(inbound.capacity() * 2, required), MAX_INBOUND_SIZE));
+        inbound.flip();
+        larger.put(inbound);
+        inbound = larger;
+        return true;
+    }
+
+    @Override
+    public boolean send(byte[] data, boolean allowOverflow) throws IOException {
+        if (closed.get()) {
+            throw new IOException("Connessione chiusa");
+        }
+
+        if (!outbound.offer(ByteBuffer.wrap(data), allowOverflow)) {
+            return false;
+        }
+        if (loop.inEventLoop()) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+        return true;
+    }
+
+    @Override
+    public void offload(Supplier<Runnable> work) {
+        try {
+            offloadExecutor.execute(() -> {
+                Runnable continuation = work.get();
+                loop.execute(() -> {
+                    if (closed.get()) {
+                        return;
+                    }
+                    continuation.run();
+                    resumeInbound();
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Executor dell'handshake non disponibile, chiusura della connessione", e);
+            close();
+        }
+    }
+
+    /**
+     * Consegna al gestore i frame arrivati mentre era sospeso in attesa di un calcolo dell'handshake.
+     * Viene invocato solo dal thread dell'event loop.
+     */
+    private void resumeInbound() {
+        if (closed.get() || inbound.position() == 0) {
+            return;
+        }
+        inbound.flip();
+        handler.handleInbound(inbound);
+        inbound.compact();
+    }
+
+    @Override
+    public boolean isCongested() {
+        return outbound.isCongested();
+    }
+
+    @Override
+    public void setDrainListener(Runnable listener) {
+        this.drainListener = listener;
+    }
+
+    /**
+     * Scrive sul canale i frame in coda finché il socket li accetta, raccogliendone più di uno
+     * in ogni scrittura vettoriale. Se il socket è pieno registra l'interesse in scrittura
+     * e riprende al prossimo evento dal frame scritto solo in parte.
+     */
+    void flush() {
+        flushScheduled.set(false);
+        if (closed.get()) {
+            return;
+        }
+
+        ByteBuffer[] batch = loop.writeBatch();
+        int count = 0;
+        try {
+            while ((count = outbound.peek(batch)) > 0) {
+                channel.write(batch, 0, count);
+                int written = 0;
+                while (written < count && !batch[written].hasRemaining()) {
+                    outbound.poll();
+                    written++;
+                }
+                Arrays.fill(batch, 0, count, null);
+                if (written < count) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(SelectionKey.OP_READ);
+
+            Runnable listener = drainListener;
+            if (outbound.clearCongestion() && listener != null) {
+                listener.run();
+            }
+        } catch (IOException e) {
+            Arrays.fill(batch, 0, count, null);
+            logger.debug("Errore durante la scrittura sul canale", e);
+            handler.closeConnection();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (loop.inEventLoop()) {
+            closeNow();
+        } else {
+            loop.execute(this::closeNow);
+        }
+    }
+
+    /**
+     * Chiude immediatamente il canale e notifica il gestore.
+     * Viene invocato solo dal thread dell'event loop.
+     */
+    void closeNow() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        key.cancel();
+        outbound.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Errore durante la chiusura del canale", e);
+        }
+
+        if (handler != null) {
+            handler.closeConnection();
+        }
+    }
+}
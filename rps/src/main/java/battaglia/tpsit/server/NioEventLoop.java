@@ -0,0 +1,216 @@
+package battaglia.tpsit.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Event loop del motore NIO: un singolo thread che serve, tramite un {@link Selector},
+ * tutte le connessioni che gli sono state assegnate.
+ */
+class NioEventLoop implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(NioEventLoop.class);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int WRITE_BATCH_SIZE = 64; // Ben sotto il limite IOV_MAX dei sistemi comuni
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final Thread thread;
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer[] writeBatch;
+    private volatile boolean running;
+
+    /**
+     * Costruttore dell'event loop.
+     *
+     * @param name Nome del thread dell'event loop
+     * @throws IOException Se non è possibile aprire il selettore
+     */
+    NioEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        this.writeBatch = new ByteBuffer[WRITE_BATCH_SIZE];
+    }
+
+    /**
+     * Avvia il thread dell'event loop.
+     */
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Ferma l'event loop e chiude il selettore.
+     */
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Verifica se il thread corrente è quello dell'event loop.
+     *
+     * @return {@code true} se il chiamante è il thread dell'event loop
+     */
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Restituisce il buffer di lettura condiviso da tutte le connessioni dell'event loop.
+     * Le connessioni copiano solo i frame incompleti, così la memoria per connessione resta minima.
+     *
+     * @return Il buffer di lettura dell'event loop
+     */
+    ByteBuffer readBuffer() {
+        return readBuffer;
+    }
+
+    /**
+     * Restituisce l'array condiviso in cui le connessioni dell'event loop raccolgono i frame
+     * da scrivere con un'unica scrittura vettoriale. Va lasciato vuoto dopo l'uso.
+     *
+     * @return L'array dei frame da scrivere
+     */
+    ByteBuffer[] writeBatch() {
+        return writeBatch;
+    }
+
+    /**
+     * Accoda un'operazione da eseguire sul thread dell'event loop.
+     *
+     * @param task L'operazione da eseguire
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Registra un nuovo canale client presso questo event loop.
+     *
+     * @param channel Il canale accettato dal server
+     * @param server  Il server principale
+     */
+    void register(SocketChannel channel, Server server) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                NioConnection connection = new NioConnection(this, channel, key, server.createOutboundQueue(),
+                        server.getHandshakeExecutor());
+                ServerClientHandler handler = new ServerClientHandler(server, connection, server.getServerKeyPair());
+                connection.setHandler(handler);
+                key.attach(connection);
+            } catch (IOException e) {
+                logger.error("Errore durante la registrazione della connessione", e);
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    /**
+     * Ciclo principale: attende eventi sul selettore, esegue le operazioni accodate
+     * e gestisce letture e scritture pronte.
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    processKey(key);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Errore nell'event loop {}", thread.getName(), e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Gestisce gli eventi pronti per una singola connessione.
+     *
+     * @param key La chiave di selezione della connessione
+     */
+    private void processKey(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            if (key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (CancelledKeyException e) {
+            connection.closeNow();
+        }
+    }
+
+    /**
+     * Esegue tutte le operazioni accodate da altri thread.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Errore durante l'esecuzione di un'operazione nell'event loop", e);
+            }
+        }
+    }
+
+    /**
+     * Chiude tutte le connessioni ancora aperte e il selettore.
+     */
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof NioConnection) {
+                ((NioConnection) attachment).closeNow();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.error("Errore durante la chiusura del selettore", e);
+        }
+    }
+
+    /**
+     * Chiude un canale ignorando eventuali errori.
+     *
+     * @param channel Il canale da chiudere
+     */
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Errore durante la chiusura del canale", e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package battaglia.tpsit.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Motore di rete basato su NIO.
+ * Un thread accetta le connessioni e le distribuisce a rotazione su un numero ridotto di
+ * {@link NioEventLoop}, così che i client inattivi non occupino un thread ciascuno.
+ */
+class NioServerEngine {
+    private static final Logger logger = LoggerFactory.getLogger(NioServerEngine.class);
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+
+    private final Server server;
+    private final ServerConfig config;
+    private final NioEventLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+    private int nextLoop;
+
+    /**
+     * Costruttore del motore NIO.
+     *
+     * @param server Il server principale
+     * @param config La configurazione del server
+     */
+    NioServerEngine(Server server, ServerConfig config) {
+        this.server = server;
+        this.config = config;
+        this.loops = new NioEventLoop[config.getEventLoopThreads()];
+    }
+
+    /**
+     * Avvia gli event loop e accetta connessioni finché il motore non viene fermato.
+     * Il metodo blocca il thread chiamante.
+     *
+     * @throws IOException Se non è possibile aprire il canale di ascolto
+     */
+    void run() throws IOException {
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioEventLoop("rps-nio-" + i);
+            loops[i].start();
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(config.getPort()), config.getAcceptBacklog());
+        running = true;
+        int port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        server.onBound(port);
+        logger.info("Server NIO avviato sulla porta {} con {} event loop", port, loops.length);
+
+        try {
+            while (running) {
+                accept();
+            }
+        } catch (ClosedChannelException e) {
+            logger.debug("Canale di ascolto chiuso");
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Accetta una connessione e la assegna a un event loop.
+     * Gli errori transitori, come l'esaurimento dei descrittori di file durante un picco di connessioni,
+     * non fermano il server: dopo una breve pausa, che lascia chiudere altre connessioni, si riprova.
+     *
+     * @throws ClosedChannelException Se il canale di ascolto è stato chiuso
+     */
+    private void accept() throws ClosedChannelException {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            logger.info("Nuova connessione da {}", channel.socket().getRemoteSocketAddress());
+            nextLoop().register(channel, server);
+        } catch (ClosedChannelException e) {
+            throw e;
+        } catch (IOException e) {
+            if (!running) {
+                return;
+            }
+            logger.error("Errore durante l'accettazione di una connessione, nuovo tentativo tra {} ms",
+                    ACCEPT_BACKOFF_MILLIS, e);
+            try {
+                Thread.sleep(ACCEPT_BACKOFF_MILLIS);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * Sceglie a rotazione l'event loop a cui assegnare la prossima connessione.
+     *
+     * @return L'event loop scelto
+     */
+    private NioEventLoop nextLoop() {
+        NioEventLoop loop = loops[nextLoop];
+        nextLoop = (nextLoop + 1) % loops.length;
+        return loop;
+    }
+
+    /**
+     * Ferma il motore: chiude il canale di ascolto e tutti gli event loop.
+     */
+    void stop() {
+        running = false;
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            logger.error("Errore durante la chiusura del canale di ascolto", e);
+        }
+
+        for (NioEventLoop loop : loops) {
+            if (loop != null) {
+                loop.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package battaglia.tpsit.server;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coda limitata dei frame in uscita di una connessione.
+ * Più thread possono accodare frame contemporaneamente, mentre un solo scrittore alla volta
+ * li preleva; quando la coda supera il budget di frame o di byte i nuovi frame vengono
+ * rifiutati invece di bloccare il mittente.
+ * <p>
+ * Su richiesta un frame può essere accettato oltre il budget, fino al doppio: in quel caso
+ * la coda si considera congestionata finché lo scrittore non l'ha svuotata del tutto.
+ */
+class OutboundQueue {
+    private static final int OVERFLOW_FACTOR = 2;
+
+    private final Queue<ByteBuffer> frames;
+    private final AtomicInteger size;
+    private final AtomicLong pendingBytes;
+    private final int maxFrames;
+    private final long maxBytes;
+    private volatile boolean congested;
+
+    /**
+     * Costruttore della coda.
+     *
+     * @param maxFrames Il numero massimo di frame in attesa
+     * @param maxBytes  Il numero massimo di byte in attesa
+     */
+    OutboundQueue(int maxFrames, long maxBytes) {
+        this.frames = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.pendingBytes = new AtomicLong();
+        this.maxFrames = maxFrames;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Accoda un frame, se rientra nel budget.
+     *
+     * @param frame         Il frame da inviare, con posizione a zero
+     * @param allowOverflow {@code true} per accettare il frame oltre il budget, fino al doppio
+     * @return {@code false} se il frame supera il budget ed è stato rifiutato
+     */
+    boolean offer(ByteBuffer frame, boolean allowOverflow) {
+        int length = frame.limit();
+        int frameLimit = allowOverflow ? maxFrames * OVERFLOW_FACTOR : maxFrames;
+        long byteLimit = allowOverflow ? maxBytes * OVERFLOW_FACTOR : maxBytes;
+
+        int queuedFrames = size.incrementAndGet();
+        long queuedBytes = pendingBytes.addAndGet(length);
+        if (queuedFrames > frameLimit || queuedBytes > byteLimit) {
+            size.decrementAndGet();
+            pendingBytes.addAndGet(-length);
+            return false;
+        }
+        if (queuedFrames > maxFrames || queuedBytes > maxBytes) {
+            congested = true;
+        }
+        frames.add(frame);
+        return true;
+    }
+
+    /**
+     * Copia i primi frame nell'array senza rimuoverli, per scriverli con un'unica operazione.
+     * Un frame scritto solo in parte resta in testa alla coda con la posizione avanzata.
+     *
+     * @param batch L'array da riempire a partire dall'indice zero
+     * @return Il numero di frame copiati, zero se la coda è vuota
+     */
+    int peek(ByteBuffer[] batch) {
+        int count = 0;
+        Iterator<ByteBuffer> iterator = frames.iterator();
+        while (count < batch.length && iterator.hasNext()) {
+            batch[count++] = iterator.next();
+        }
+        return count;
+    }
+
+    /**
+     * Rimuove e restituisce il primo frame.
+     *
+     * @return Il primo frame, o {@code null} se la coda è vuota
+     */
+    ByteBuffer poll() {
+        ByteBuffer frame = frames.poll();
+        if (frame != null) {
+            size.decrementAndGet();
+            pendingBytes.addAndGet(-frame.limit());
+        }
+        return frame;
+    }
+
+    /**
+     * Indica se non ci sono frame in attesa.
+     *
+     * @return {@code true} se la coda è vuota
+     */
+    boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    /**
+     * Indica se la coda ha accettato frame oltre il budget e non è ancora stata svuotata.
+     *
+     * @return {@code true} se la coda è congestionata
+     */
+    boolean isCongested() {
+        return congested;
+    }
+
+    /**
+     * Segnala che lo scrittore ha svuotato la coda, terminando l'eventuale congestione.
+     *
+     * @return {@code true} se la coda era congestionata e ora non lo è più
+     */
+    boolean clearCongestion() {
+        if (congested && frames.isEmpty()) {
+            congested = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Scarta tutti i frame in attesa.
+     */
+    void clear() {
+        while (poll() != null) {
+            // Scarta il frame
+        }
+    }
+}
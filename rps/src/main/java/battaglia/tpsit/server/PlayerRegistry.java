@@ -0,0 +1,87 @@
+package battaglia.tpsit.server;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registro dei giocatori, che assegna a ogni nome utente un ID intero compatto all'HELLO.
+ * <p>
+ * Il nome utente viene cercato solo una volta per connessione; da lì in poi il server lavora con
+ * gli ID e con gli {@link PlayerSlot}, che si trovano in un array a blocchi indicizzato per ID.
+ * I blocchi vengono aggiunti man mano che arrivano nuovi giocatori e non vengono mai spostati,
+ * quindi la lettura di uno slot non richiede lock.
+ */
+class PlayerRegistry {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Map<String, PlayerSlot> byUsername;
+    private volatile AtomicReferenceArray<PlayerSlot>[] chunks;
+    private int nextId;
+
+    /**
+     * Costruttore del registro vuoto.
+     */
+    @SuppressWarnings("unchecked")
+    PlayerRegistry() {
+        this.byUsername = new ConcurrentHashMap<>();
+        this.chunks = new AtomicReferenceArray[0];
+    }
+
+    /**
+     * Restituisce lo slot di un nome utente, creandolo con un nuovo ID alla prima connessione.
+     *
+     * @param username Il nome utente
+     * @return Lo slot del giocatore
+     */
+    PlayerSlot register(String username) {
+        PlayerSlot slot = byUsername.get(username);
+        return slot != null ? slot : byUsername.computeIfAbsent(username, this::allocate);
+    }
+
+    /**
+     * Restituisce lo slot di un ID.
+     *
+     * @param id L'ID del giocatore
+     * @return Lo slot, o {@code null} se l'ID non è stato assegnato
+     */
+    PlayerSlot get(int id) {
+        AtomicReferenceArray<PlayerSlot>[] current = chunks;
+        int chunk = id >>> CHUNK_BITS;
+        return chunk < current.length ? current[chunk].get(id & CHUNK_MASK) : null;
+    }
+
+    /**
+     * Restituisce il numero di ID assegnati.
+     *
+     * @return Il numero di giocatori registrati
+     */
+    int size() {
+        return byUsername.size();
+    }
+
+    /**
+     * Crea lo slot di un nuovo giocatore con il primo ID libero, aggiungendo un blocco se serve.
+     *
+     * @param username Il nome utente
+     * @return Il nuovo slot
+     */
+    private synchronized PlayerSlot allocate(String username) {
+        int id = nextId++;
+        int chunk = id >>> CHUNK_BITS;
+        AtomicReferenceArray<PlayerSlot>[] current = chunks;
+        if (chunk == current.length) {
+            AtomicReferenceArray<PlayerSlot>[] grown = Arrays.copyOf(current, chunk + 1);
+            grown[chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            chunks = grown;
+            current = grown;
+        }
+
+        PlayerSlot slot = new PlayerSlot(id, username, EloRatings.INITIAL_RATING);
+        current[chunk].set(id & CHUNK_MASK, slot);
+        return slot;
+    }
+}
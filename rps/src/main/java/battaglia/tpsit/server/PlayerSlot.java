@@ -0,0 +1,175 @@
+package battaglia.tpsit.server;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import battaglia.tpsit.common.JsonCodec;
+
+/**
+ * Stato lato server di un giocatore, identificato da un ID intero compatto.
+ * <p>
+ * Lo slot viene creato alla prima connessione con un certo nome utente e riusato alle connessioni
+ * successive, così ID e punteggio Elo sopravvivono a una riconnessione. Contiene l'handler della
+ * connessione corrente e la sessione in cui il giocatore sta giocando: le strutture del server
+ * accedono a entrambi tramite lo slot invece di cercare il nome utente in una mappa.
+ */
+final class PlayerSlot {
+    private static final AtomicReferenceFieldUpdater<PlayerSlot, GameSession> SESSION =
+            AtomicReferenceFieldUpdater.newUpdater(PlayerSlot.class, GameSession.class, "session");
+    private static final AtomicReferenceFieldUpdater<PlayerSlot, ServerClientHandler> HANDLER =
+            AtomicReferenceFieldUpdater.newUpdater(PlayerSlot.class, ServerClientHandler.class, "handler");
+
+    private final int id;
+    private final String username;
+    private final byte[] jsonUsername;
+    private volatile ServerClientHandler handler;
+    private volatile GameSession session;
+    private volatile double rating;
+    private volatile LobbyShard queueShard;
+
+    /**
+     * Costruttore dello slot.
+     *
+     * @param id       L'ID del giocatore
+     * @param username Il nome utente del giocatore
+     * @param rating   Il punteggio Elo iniziale
+     */
+    PlayerSlot(int id, String username, double rating) {
+        this.id = id;
+        this.username = username;
+        this.jsonUsername = JsonCodec.quote(username);
+        this.rating = rating;
+    }
+
+    /**
+     * Restituisce l'ID del giocatore.
+     *
+     * @return L'ID del giocatore
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Restituisce il nome utente del giocatore, usato solo per costruire i messaggi in uscita e i log.
+     *
+     * @return Il nome utente
+     */
+    String getUsername() {
+        return username;
+    }
+
+    /**
+     * Restituisce il nome utente già codificato come stringa JSON, calcolato una volta sola
+     * e inserito nei modelli pre-serializzati dei risultati.
+     *
+     * @return I byte UTF-8 del nome utente tra virgolette
+     */
+    byte[] getJsonUsername() {
+        return jsonUsername;
+    }
+
+    /**
+     * Restituisce l'handler della connessione corrente.
+     *
+     * @return L'handler, o {@code null} se il giocatore non è connesso
+     */
+    ServerClientHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Imposta l'handler della connessione corrente, sostituendo quello di una connessione precedente.
+     *
+     * @param handler L'handler della connessione
+     */
+    void setHandler(ServerClientHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Scollega un handler, solo se è ancora quello corrente: la chiusura di una connessione
+     * vecchia non scollega il giocatore che si è già riconnesso.
+     *
+     * @param expected L'handler da scollegare
+     * @return {@code true} se l'handler è stato scollegato
+     */
+    boolean clearHandler(ServerClientHandler expected) {
+        return HANDLER.compareAndSet(this, expected, null);
+    }
+
+    /**
+     * Restituisce la sessione in cui il giocatore sta giocando.
+     *
+     * @return La sessione, o {@code null} se il giocatore non è in partita
+     */
+    GameSession getSession() {
+        return session;
+    }
+
+    /**
+     * Prenota il giocatore per una sessione, se non è già in partita.
+     *
+     * @param newSession La sessione
+     * @return {@code true} se il giocatore era libero ed è stato assegnato alla sessione
+     */
+    boolean claimSession(GameSession newSession) {
+        return SESSION.compareAndSet(this, null, newSession);
+    }
+
+    /**
+     * Libera il giocatore da una sessione, solo se è ancora quella corrente.
+     *
+     * @param expected La sessione da liberare
+     * @return {@code true} se il giocatore è stato liberato
+     */
+    boolean releaseSession(GameSession expected) {
+        return SESSION.compareAndSet(this, expected, null);
+    }
+
+    /**
+     * Indica se il giocatore è connesso e non è in partita.
+     *
+     * @return {@code true} se il giocatore può essere accoppiato
+     */
+    boolean isAvailable() {
+        return handler != null && session == null;
+    }
+
+    /**
+     * Restituisce il punteggio Elo del giocatore.
+     *
+     * @return Il punteggio
+     */
+    double getRating() {
+        return rating;
+    }
+
+    /**
+     * Imposta il punteggio Elo del giocatore.
+     *
+     * @param rating Il punteggio
+     */
+    void setRating(double rating) {
+        this.rating = rating;
+    }
+
+    /**
+     * Restituisce la partizione a cui è stato affidato l'ultimo ingresso in coda del giocatore.
+     * Di solito è quella scelta dall'ID, ma cambia quando un ribilanciamento cede il giocatore
+     * a un'altra partizione.
+     *
+     * @return La partizione, o {@code null} se il giocatore non è mai entrato in coda
+     */
+    LobbyShard getQueueShard() {
+        return queueShard;
+    }
+
+    /**
+     * Imposta la partizione a cui viene affidato l'ingresso in coda del giocatore.
+     *
+     * @param queueShard La partizione
+     */
+    void setQueueShard(LobbyShard queueShard) {
+        this.queueShard = queueShard;
+    }
+}
@@ -0,0 +1,428 @@
+package battaglia.tpsit.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Coda di attesa che accoppia i giocatori con punteggio simile.
+ * <p>
+ * I giocatori in attesa sono divisi in bucket di ampiezza fissa in base al punteggio, tenuti in una
+ * {@link TreeMap}; dentro ogni bucket l'ordine è quello di arrivo. Per trovare un avversario si parte
+ * dal bucket del giocatore e ci si allarga verso quelli vicini non vuoti, fermandosi appena la distanza
+ * supera l'intervallo accettabile: il costo di un accoppiamento è quindi logaritmico nel numero di
+ * bucket e non dipende dal numero di giocatori in coda.
+ * <p>
+ * I giocatori sono identificati dal loro ID intero: l'indice della coda è una {@link IntObjectMap}
+ * e sia l'ordine di arrivo sia i bucket sono liste collegate dentro i ticket stessi, quindi
+ * inserimento e rimozione non allocano altro che il ticket.
+ * <p>
+ * L'intervallo accettabile parte da un valore iniziale e si allarga con il tempo di attesa, fino a un
+ * massimo: chi aspetta da più tempo accetta avversari sempre meno simili. Per applicare l'allargamento
+ * va invocato periodicamente {@link #matchAll(long, IntPredicate)}.
+ * <p>
+ * La classe non è thread-safe: il server la usa solo dal thread del {@link MatchmakingService}.
+ */
+class RatingMatchmaker {
+    private final int bucketWidth;
+    private final double initialRange;
+    private final double widenPerSecond;
+    private final double maxRange;
+    private final TreeMap<Integer, Bucket> buckets;
+    private final IntObjectMap<Ticket> queue;
+    private Ticket oldest;
+    private Ticket newest;
+
+    /**
+     * Costruttore della coda.
+     *
+     * @param bucketWidth    Ampiezza di un bucket, in punti
+     * @param initialRange   Differenza di punteggio accettata appena entrati in coda
+     * @param widenPerSecond Punti di cui l'intervallo si allarga per ogni secondo di attesa
+     * @param maxRange       Differenza di punteggio massima accettata
+     */
+    RatingMatchmaker(int bucketWidth, double initialRange, double widenPerSecond, double maxRange) {
+        this.bucketWidth = Math.max(1, bucketWidth);
+        this.initialRange = initialRange;
+        this.widenPerSecond = widenPerSecond;
+        this.maxRange = Math.max(initialRange, maxRange);
+        this.buckets = new TreeMap<>();
+        this.queue = new IntObjectMap<>(64);
+    }
+
+    /**
+     * Inserisce un giocatore in coda.
+     *
+     * @param playerId  ID del giocatore
+     * @param rating    Punteggio del giocatore
+     * @param nowNanos  Istante di ingresso, in nanosecondi
+     * @return {@code false} se il giocatore era già in coda
+     */
+    boolean add(int playerId, double rating, long nowNanos) {
+        if (queue.containsKey(playerId)) {
+            return false;
+        }
+
+        Ticket ticket = new Ticket(playerId, rating, bucketOf(rating), nowNanos);
+        queue.put(playerId, ticket);
+
+        ticket.older = newest;
+        if (newest == null) {
+            oldest = ticket;
+        } else {
+            newest.newer = ticket;
+        }
+        newest = ticket;
+
+        buckets.computeIfAbsent(ticket.bucket, key -> new Bucket()).add(ticket);
+        return true;
+    }
+
+    /**
+     * Rimuove un giocatore dalla coda.
+     *
+     * @param playerId ID del giocatore
+     * @return {@code true} se il giocatore era in coda
+     */
+    boolean remove(int playerId) {
+        Ticket ticket = queue.remove(playerId);
+        if (ticket == null) {
+            return false;
+        }
+        unlink(ticket);
+        return true;
+    }
+
+    /**
+     * Indica se un giocatore è in coda.
+     *
+     * @param playerId ID del giocatore
+     * @return {@code true} se il giocatore è in coda
+     */
+    boolean contains(int playerId) {
+        return queue.containsKey(playerId);
+    }
+
+    /**
+     * Restituisce il numero di giocatori in coda.
+     *
+     * @return Il numero di giocatori in attesa
+     */
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * Rimuove dalla coda il giocatore che aspetta da più tempo.
+     *
+     * @return L'ID del giocatore, o -1 se la coda è vuota
+     */
+    int pollOldest() {
+        Ticket ticket = oldest;
+        if (ticket == null) {
+            return -1;
+        }
+        queue.remove(ticket.playerId);
+        unlink(ticket);
+        return ticket.playerId;
+    }
+
+    /**
+     * Cerca un avversario per un giocatore in coda e, se lo trova, rimuove entrambi dalla coda.
+     * I giocatori per cui {@code available} è falso vengono scartati dalla coda durante la ricerca.
+     *
+     * @param playerId  ID del giocatore
+     * @param nowNanos  Istante corrente, in nanosecondi
+     * @param available Verifica che un avversario sia ancora connesso e libero
+     * @return La partita trovata, o {@code null} se nessun avversario è nell'intervallo accettabile
+     */
+    Match match(int playerId, long nowNanos, IntPredicate available) {
+        Ticket ticket = queue.get(playerId);
+        if (ticket == null) {
+            return null;
+        }
+        if (!available.test(playerId)) {
+            remove(playerId);
+            return null;
+        }
+
+        Ticket opponent = findOpponent(ticket, rangeOf(ticket, nowNanos), available);
+        if (opponent == null) {
+            return null;
+        }
+
+        remove(ticket.playerId);
+        remove(opponent.playerId);
+        return new Match(ticket, opponent, nowNanos);
+    }
+
+    /**
+     * Accoppia tutti i giocatori possibili, partendo da chi aspetta da più tempo.
+     * Va invocato periodicamente per applicare l'allargamento dell'intervallo con l'attesa.
+     *
+     * @param nowNanos  Istante corrente, in nanosecondi
+     * @param available Verifica che un giocatore sia ancora connesso e libero
+     * @return Le partite trovate, in ordine di attesa
+     */
+    List<Match> matchAll(long nowNanos, IntPredicate available) {
+        // Gli ID vengono copiati prima: ogni partita toglie dalla lista anche l'avversario
+        int[] waiting = new int[queue.size()];
+        int count = 0;
+        for (Ticket ticket = oldest; ticket != null; ticket = ticket.newer) {
+            waiting[count++] = ticket.playerId;
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Match match = match(waiting[i], nowNanos, available);
+            if (match != null) {
+                matches.add(match);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Cerca l'avversario più vicino per punteggio, visitando i bucket in ordine di distanza.
+     * Dentro un bucket viene scelto chi aspetta da più tempo.
+     *
+     * @param ticket    Il giocatore che cerca un avversario
+     * @param range     La differenza di punteggio accettata
+     * @param available Verifica che un avversario sia ancora connesso e libero
+     * @return L'avversario, o {@code null} se non ce n'è uno nell'intervallo
+     */
+    private Ticket findOpponent(Ticket ticket, double range, IntPredicate available) {
+        int maxDistance = (int) Math.ceil(range / bucketWidth);
+        Integer below = buckets.floorKey(ticket.bucket);
+        Integer above = buckets.higherKey(ticket.bucket);
+
+        while (below != null || above != null) {
+            boolean takeBelow = above == null
+                    || (below != null && ticket.bucket - below <= above - ticket.bucket);
+            int bucket = takeBelow ? below : above;
+            if (Math.abs(bucket - ticket.bucket) > maxDistance) {
+                return null; // Anche il bucket più vicino è fuori intervallo
+            }
+
+            Ticket opponent = pollCandidate(bucket, ticket, range, available);
+            if (opponent != null) {
+                return opponent;
+            }
+            if (takeBelow) {
+                below = buckets.lowerKey(bucket);
+            } else {
+                above = buckets.higherKey(bucket);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cerca in un bucket il primo avversario valido, scartando i giocatori non più disponibili.
+     *
+     * @param bucket    L'indice del bucket
+     * @param ticket    Il giocatore che cerca un avversario
+     * @param range     La differenza di punteggio accettata
+     * @param available Verifica che un avversario sia ancora connesso e libero
+     * @return L'avversario, o {@code null} se il bucket non ne contiene uno valido
+     */
+    private Ticket pollCandidate(int bucket, Ticket ticket, double range, IntPredicate available) {
+        Bucket entries = buckets.get(bucket);
+        if (entries == null) {
+            return null;
+        }
+
+        Ticket candidate = entries.head;
+        while (candidate != null) {
+            Ticket next = candidate.bucketNext;
+            if (candidate != ticket && Math.abs(candidate.rating - ticket.rating) <= range) {
+                if (available.test(candidate.playerId)) {
+                    return candidate;
+                }
+                // Giocatore disconnesso o già in partita: esce dalla coda
+                remove(candidate.playerId);
+            }
+            candidate = next;
+        }
+        return null;
+    }
+
+    /**
+     * Calcola la differenza di punteggio accettata da un giocatore in base al tempo di attesa.
+     *
+     * @param ticket   Il giocatore
+     * @param nowNanos Istante corrente, in nanosecondi
+     * @return La differenza di punteggio accettata
+     */
+    private double rangeOf(Ticket ticket, long nowNanos) {
+        double waitedSeconds = Math.max(0, nowNanos - ticket.enqueuedAt) / 1_000_000_000.0;
+        return Math.min(maxRange, initialRange + widenPerSecond * waitedSeconds);
+    }
+
+    /**
+     * Rimuove un giocatore dall'ordine di arrivo e dal suo bucket, eliminando il bucket se resta vuoto.
+     *
+     * @param ticket Il giocatore
+     */
+    private void unlink(Ticket ticket) {
+        if (ticket.older == null) {
+            oldest = ticket.newer;
+        } else {
+            ticket.older.newer = ticket.newer;
+        }
+        if (ticket.newer == null) {
+            newest = ticket.older;
+        } else {
+            ticket.newer.older = ticket.older;
+        }
+        ticket.older = null;
+        ticket.newer = null;
+
+        Bucket entries = buckets.get(ticket.bucket);
+        if (entries != null) {
+            entries.remove(ticket);
+            if (entries.head == null) {
+                buckets.remove(ticket.bucket);
+            }
+        }
+    }
+
+    /**
+     * Calcola il bucket di un punteggio.
+     *
+     * @param rating Il punteggio
+     * @return L'indice del bucket
+     */
+    private int bucketOf(double rating) {
+        return (int) Math.floor(rating / bucketWidth);
+    }
+
+    /**
+     * Giocatore in attesa, collegato sia nell'ordine di arrivo sia nel proprio bucket.
+     */
+    private static final class Ticket {
+        private final int playerId;
+        private final double rating;
+        private final int bucket;
+        private final long enqueuedAt;
+        private Ticket older;
+        private Ticket newer;
+        private Ticket bucketPrev;
+        private Ticket bucketNext;
+
+        private Ticket(int playerId, double rating, int bucket, long enqueuedAt) {
+            this.playerId = playerId;
+            this.rating = rating;
+            this.bucket = bucket;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Bucket di punteggio: lista doppiamente collegata dei ticket in ordine di arrivo.
+     */
+    private static final class Bucket {
+        private Ticket head;
+        private Ticket tail;
+
+        /**
+         * Aggiunge un ticket in fondo al bucket.
+         *
+         * @param ticket Il ticket
+         */
+        void add(Ticket ticket) {
+            ticket.bucketPrev = tail;
+            if (tail == null) {
+                head = ticket;
+            } else {
+                tail.bucketNext = ticket;
+            }
+            tail = ticket;
+        }
+
+        /**
+         * Rimuove un ticket dal bucket.
+         *
+         * @param ticket Il ticket
+         */
+        void remove(Ticket ticket) {
+            if (ticket.bucketPrev == null) {
+                head = ticket.bucketNext;
+            } else {
+                ticket.bucketPrev.bucketNext = ticket.bucketNext;
+            }
+            if (ticket.bucketNext == null) {
+                tail = ticket.bucketPrev;
+            } else {
+                ticket.bucketNext.bucketPrev = ticket.bucketPrev;
+            }
+            ticket.bucketPrev = null;
+            ticket.bucketNext = null;
+        }
+    }
+
+    /**
+     * Coppia di giocatori accoppiati dalla coda.
+     */
+    static final class Match {
+        private final int player1;
+        private final int player2;
+        private final double ratingGap;
+        private final long waitNanos1;
+        private final long waitNanos2;
+
+        private Match(Ticket first, Ticket second, long nowNanos) {
+            this.player1 = first.playerId;
+            this.player2 = second.playerId;
+            this.ratingGap = Math.abs(first.rating - second.rating);
+            this.waitNanos1 = nowNanos - first.enqueuedAt;
+            this.waitNanos2 = nowNanos - second.enqueuedAt;
+        }
+
+        /**
+         * Restituisce il giocatore che ha cercato l'avversario.
+         *
+         * @return L'ID del giocatore
+         */
+        int getPlayer1() {
+            return player1;
+        }
+
+        /**
+         * Restituisce l'avversario trovato.
+         *
+         * @return L'ID dell'avversario
+         */
+        int getPlayer2() {
+            return player2;
+        }
+
+        /**
+         * Restituisce la differenza di punteggio tra i due giocatori.
+         *
+         * @return La differenza di punteggio
+         */
+        double getRatingGap() {
+            return ratingGap;
+        }
+
+        /**
+         * Restituisce il tempo di attesa del primo giocatore.
+         *
+         * @return L'attesa in nanosecondi
+         */
+        long getWaitNanos1() {
+            return waitNanos1;
+        }
+
+        /**
+         * Restituisce il tempo di attesa del secondo giocatore.
+         *
+         * @return L'attesa in nanosecondi
+         */
+        long getWaitNanos2() {
+            return waitNanos2;
+        }
+    }
+}
@@ -1,60 +1,143 @@
 package battaglia.tpsit.server;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Paths;
 import java.security.KeyPair;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import battaglia.tpsit.common.CryptoUtils;
+import battaglia.tpsit.common.Message;
 
 /**
  * Server principale per il gioco RPS Advanced.
  * Gestisce la connessione dei client e l'avvio delle sessioni di gioco.
+ * <p>
+ * All'HELLO ogni nome utente riceve dal {@link PlayerRegistry} un ID intero compatto; da lì in poi
+ * le strutture del server lavorano con gli ID e con i {@link PlayerSlot}, e il nome utente serve
+ * solo a costruire i messaggi in uscita.
  */
 public class Server {
     private static final Logger logger = LoggerFactory.getLogger(Server.class);
-    private static final int PORT = 12345;
+    private static final long TIMER_TICK_MILLIS = 100;
+    private static final int TIMER_WHEEL_SIZE = 512;
+    static final int RATING_BUCKET_WIDTH = 25;
+    static final double MAX_MATCH_RANGE = 1000;
 
+    private ServerConfig config;
     private ServerSocket serverSocket;
+    private NioServerEngine nioEngine;
     private boolean running;
     private ExecutorService executorService;
-    private Map<String, ServerClientHandler> connectedClients;
-    private Map<String, GameSession> gameSessions;
+    private ExecutorService handshakeExecutor;
+    private LobbyShard[] shards;
+    private PlayerRegistry registry;
+    private AtomicLong nextSessionId;
     private KeyPair serverKeyPair;
+    private TicketKeyManager ticketKeyManager;
+    private BackpressureMetrics backpressureMetrics;
+    private HashedWheelTimer timer;
+    private final CountDownLatch bound = new CountDownLatch(1);
+    private volatile int localPort = -1;
 
     /**
-     * Costruttore del server.
-     * Inizializza le strutture dati e genera la coppia di chiavi RSA.
+     * Costruttore del server con la configurazione predefinita.
+     * Inizializza le strutture dati e carica o genera la coppia di chiavi RSA.
      */
     public Server() {
-        this.connectedClients = new ConcurrentHashMap<>();
-        this.gameSessions = new ConcurrentHashMap<>();
-        this.executorService = Executors.newCachedThreadPool();
+        this(new ServerConfig());
+    }
+
+    /**
+     * Costruttore del server.
+     * Inizializza le strutture dati e carica la coppia di chiavi RSA dal file configurato,
+     * generandola solo se il file non esiste.
+     *
+     * @param config La configurazione del server
+     */
+    public Server(ServerConfig config) {
+        this.config = config;
+        this.registry = new PlayerRegistry();
+        this.nextSessionId = new AtomicLong();
+        this.backpressureMetrics = new BackpressureMetrics();
+        this.timer = new HashedWheelTimer(TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE);
+        this.shards = new LobbyShard[config.getLobbyShards()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new LobbyShard(i);
+        }
+        for (LobbyShard shard : shards) {
+            shard.setMatchmaking(new MatchmakingService(this, shard, new RatingMatchmaker(RATING_BUCKET_WIDTH,
+                    config.getMatchRange(), config.getMatchWidenPerSecond(), MAX_MATCH_RANGE),
+                    config.getMatchTickMillis()));
+        }
+        this.executorService = config.getEngine() == ServerEngine.VIRTUAL
+            ? createVirtualThreadExecutor()
+            : Executors.newCachedThreadPool();
+        if (config.getEngine() == ServerEngine.NIO) {
+            this.handshakeExecutor = createHandshakeExecutor();
+        }
 
         try {
-            this.serverKeyPair = CryptoUtils.generateRSAKeyPair();
-            logger.debug("Chiavi RSA generate con successo");
+            if (config.getKeyFile() != null) {
+                this.serverKeyPair = ServerKeyStore.loadOrCreate(Paths.get(config.getKeyFile()));
+            } else {
+                this.serverKeyPair = CryptoUtils.generateRSAKeyPair();
+                logger.debug("Chiavi RSA generate con successo");
+            }
+            if (config.getTicketLifetimeSeconds() > 0) {
+                this.ticketKeyManager = new TicketKeyManager(config.getTicketLifetimeSeconds());
+            }
         } catch (Exception e) {
-            logger.error("Errore durante la generazione delle chiavi RSA", e);
+            logger.error("Errore durante il caricamento delle chiavi RSA", e);
             throw new RuntimeException("Impossibile avviare il server: errore di crittografia");
         }
     }
 
     /**
-     * Avvia il server e accetta connessioni dai client.
+     * Crea un executor che esegue ogni handler su un nuovo thread virtuale.
+     * L'executor viene cercato per riflessione, così il progetto compila anche con JDK precedenti al 21;
+     * se la JVM non supporta i thread virtuali viene usato un pool di thread tradizionale.
+     *
+     * @return L'executor per gli handler dei client
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            logger.debug("Handler dei client eseguiti su thread virtuali");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Thread virtuali non supportati da questa JVM, uso un pool di thread tradizionale");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Avvia il server e accetta connessioni dai client con il motore configurato.
      */
     public void start() {
+        if (config.getEngine() == ServerEngine.NIO) {
+            startNio();
+            return;
+        }
+
         try {
-            serverSocket = new ServerSocket(PORT);
+            serverSocket = new ServerSocket(config.getPort(), config.getAcceptBacklog());
             running = true;
-            logger.info("Server avviato sulla porta {}", PORT);
+            onBound(serverSocket.getLocalPort());
+            logger.info("Server avviato sulla porta {}", localPort);
 
             while (running) {
                 Socket clientSocket = serverSocket.accept();
@@ -73,113 +156,285 @@ public class Server {
         }
     }
 
+    /**
+     * Avvia il motore NIO, che serve tutte le connessioni con pochi event loop.
+     */
+    private void startNio() {
+        running = true;
+        nioEngine = new NioServerEngine(this, config);
+        try {
+            nioEngine.run();
+        } catch (IOException e) {
+            if (running) {
+                logger.error("Errore durante l'accettazione delle connessioni", e);
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Registra la porta su cui il server è effettivamente in ascolto e sblocca chi attende l'avvio.
+     * Invocato dal motore appena il canale di ascolto è aperto.
+     *
+     * @param port La porta di ascolto
+     */
+    void onBound(int port) {
+        localPort = port;
+        bound.countDown();
+    }
+
+    /**
+     * Restituisce la porta su cui il server è in ascolto. Con la porta 0 nella configurazione
+     * è quella scelta dal sistema operativo, utile per avviare il server all'interno di un altro processo.
+     *
+     * @return La porta di ascolto, o -1 se il server non è ancora avviato
+     */
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    /**
+     * Attende che il server sia in ascolto.
+     *
+     * @param timeout Tempo massimo di attesa
+     * @param unit    Unità del tempo di attesa
+     * @return {@code true} se il server è in ascolto, {@code false} se il tempo è scaduto o l'avvio è fallito
+     * @throws InterruptedException Se il thread viene interrotto durante l'attesa
+     */
+    public boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        return bound.await(timeout, unit) && localPort >= 0;
+    }
+
     /**
      * Ferma il server e chiude tutte le connessioni.
      */
     public void stop() {
         try {
             running = false;
+            // Se l'avvio è fallito chi attende viene comunque sbloccato
+            bound.countDown();
+            if (nioEngine != null) {
+                nioEngine.stop();
+            }
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
             executorService.shutdown();
-            logger.info("Server arrestato");
+            if (handshakeExecutor != null) {
+                handshakeExecutor.shutdown();
+            }
+            timer.stop();
+            for (LobbyShard shard : shards) {
+                shard.getMatchmaking().stop();
+            }
+            logger.info("Server arrestato (backpressure: {}; matchmaking: {})",
+                    backpressureMetrics, getMatchmakingMetrics());
         } catch (IOException e) {
             logger.error("Errore durante l'arresto del server", e);
         }
     }
 
     /**
-     * Registra un client connesso.
+     * Registra un client connesso e lo inserisce nella coda di attesa della sua partizione.
+     * Se lo stesso nome utente era in partita con una connessione precedente, quella partita
+     * viene terminata e l'avversario torna in coda.
      *
      * @param username Nome utente del client
      * @param handler  Handler del client
+     * @return Lo slot del giocatore, da usare per tutte le operazioni successive
      */
-    public void registerClient(String username, ServerClientHandler handler) {
-        connectedClients.put(username, handler);
-        logger.info("Client registrato: {}", username);
+    PlayerSlot registerClient(String username, ServerClientHandler handler) {
+        PlayerSlot player = registry.register(username);
+        player.setHandler(handler);
+        logger.info("Client registrato: {} (ID {})", username, player.getId());
 
-        // Verifica se è possibile avviare una nuova partita
-        checkForMatchmaking();
+        GameSession previous = player.getSession();
+        if (previous != null) {
+            endGameSession(previous, previous.getPlayer1() != player, previous.getPlayer2() != player);
+        }
+        enqueuePlayer(player);
+        return player;
     }
 
     /**
-     * Rimuove un client dalla lista dei client connessi.
+     * Rimuove un client dai client connessi, se la connessione è ancora quella corrente del giocatore.
+     * L'uscita dalla coda viene inviata alla partizione che ha ricevuto l'ultimo ingresso del giocatore,
+     * che dopo un ribilanciamento non è quella scelta dall'ID.
+     * Se il client era in partita la sessione viene terminata e l'avversario torna in coda.
      *
-     * @param username Nome utente del client da rimuovere
+     * @param player  Il giocatore
+     * @param handler Handler della connessione chiusa
      */
-    public void removeClient(String username) {
-        connectedClients.remove(username);
-        logger.info("Client rimosso: {}", username);
+    void removeClient(PlayerSlot player, ServerClientHandler handler) {
+        if (!player.clearHandler(handler)) {
+            return; // Il giocatore si è già riconnesso con un'altra connessione
+        }
+        LobbyShard queueShard = player.getQueueShard();
+        if (queueShard != null) {
+            queueShard.getMatchmaking().remove(player);
+        }
+        logger.info("Client rimosso: {}", player.getUsername());
+
+        GameSession session = player.getSession();
+        if (session != null) {
+            endGameSession(session, true, true);
+        }
     }
 
     /**
-     * Controlla se ci sono abbastanza client per avviare una partita.
+     * Restituisce la partizione della lobby a cui appartiene un giocatore.
+     *
+     * @param player Il giocatore
+     * @return La partizione del giocatore
      */
-    private void checkForMatchmaking() {
-        if (connectedClients.size() >= 2) {
-            // Prendi due client che non sono in una sessione di gioco
-            String[] availableClients = connectedClients.keySet().stream()
-                .filter(username -> !isClientInGame(username))
-                .limit(2)
-                .toArray(String[]::new);
+    LobbyShard shardOf(PlayerSlot player) {
+        return shards[player.getId() % shards.length];
+    }
 
-            if (availableClients.length == 2) {
-                String player1 = availableClients[0];
-                String player2 = availableClients[1];
+    /**
+     * Restituisce lo slot di un giocatore dato il suo ID.
+     *
+     * @param id L'ID del giocatore
+     * @return Lo slot, o {@code null} se l'ID non è stato assegnato
+     */
+    PlayerSlot getPlayer(int id) {
+        return registry.get(id);
+    }
 
-                // Crea una nuova sessione di gioco
-                String sessionId = player1 + "-" + player2;
-                GameSession gameSession = new GameSession(sessionId, player1, player2, this);
-                gameSessions.put(sessionId, gameSession);
+    /**
+     * Restituisce tutte le partizioni della lobby.
+     *
+     * @return Le partizioni, in ordine di indice
+     */
+    LobbyShard[] getShards() {
+        return shards;
+    }
 
-                // Notifica i client dell'inizio della partita
-                ServerClientHandler handler1 = connectedClients.get(player1);
-                ServerClientHandler handler2 = connectedClients.get(player2);
+    /**
+     * Inserisce un giocatore nella coda di attesa della sua partizione al prossimo tick
+     * del matchmaking, se non è già in coda o in partita.
+     *
+     * @param player Il giocatore
+     */
+    private void enqueuePlayer(PlayerSlot player) {
+        shardOf(player).getMatchmaking().enqueue(player);
+    }
 
-                handler1.setCurrentGameSession(gameSession);
-                handler2.setCurrentGameSession(gameSession);
+    /**
+     * Crea e registra la sessione per una coppia trovata dal matchmaking di una partizione.
+     * Ogni giocatore viene prenotato in modo atomico sul proprio slot: se nel frattempo è stato
+     * accoppiato da un'altra partizione la sessione non viene creata e l'altro giocatore torna in coda.
+     * Ogni sessione riceve un ID numerico univoco, quindi due partite successive tra gli stessi
+     * giocatori non si confondono.
+     *
+     * @param match La coppia di giocatori
+     * @return La sessione creata, o {@code null} se uno dei giocatori non era più libero
+     */
+    GameSession createGameSession(RatingMatchmaker.Match match) {
+        PlayerSlot player1 = registry.get(match.getPlayer1());
+        PlayerSlot player2 = registry.get(match.getPlayer2());
+        GameSession gameSession = new GameSession(nextSessionId.incrementAndGet(), player1, player2, this);
 
-                handler1.notifyGameStart(player2);
-                handler2.notifyGameStart(player1);
+        if (!player1.claimSession(gameSession)) {
+            enqueuePlayer(player2);
+            return null;
+        }
+        if (!player2.claimSession(gameSession)) {
+            player1.releaseSession(gameSession);
+            enqueuePlayer(player1);
+            return null;
+        }
 
-                logger.info("Nuova sessione di gioco avviata: {} vs {}", player1, player2);
-            }
+        logger.debug("Accoppiati {} e {} (differenza di punteggio {})",
+                player1.getUsername(), player2.getUsername(), Math.round(match.getRatingGap()));
+        return gameSession;
+    }
+
+    /**
+     * Notifica ai client l'inizio di una sessione appena creata.
+     *
+     * @param gameSession La sessione di gioco
+     */
+    void startGameSession(GameSession gameSession) {
+        PlayerSlot player1 = gameSession.getPlayer1();
+        PlayerSlot player2 = gameSession.getPlayer2();
+        ServerClientHandler handler1 = player1.getHandler();
+        ServerClientHandler handler2 = player2.getHandler();
+        if (handler1 == null || handler2 == null) {
+            // Uno dei due si è disconnesso nel frattempo
+            endGameSession(gameSession, true, true);
+            return;
         }
+
+        handler1.notifyGameStart(player2.getUsername());
+        handler2.notifyGameStart(player1.getUsername());
+        gameSession.startMoveDeadline();
+
+        logger.info("Nuova sessione di gioco {} avviata: {} vs {}",
+                gameSession.getSessionId(), player1.getUsername(), player2.getUsername());
     }
 
     /**
-     * Restituisce l'handler del client connesso specificato.
+     * Termina una sessione di gioco scegliendo quali giocatori rimettere in coda.
+     * Un giocatore escluso resta connesso ma fuori dalla coda finché non chiede di giocare ancora.
      *
-     * @param username Nome utente del client
-     * @return L'handler del client, o {@code null} se non è connesso
+     * @param session        La sessione di gioco
+     * @param requeuePlayer1 {@code true} per rimettere in coda il primo giocatore
+     * @param requeuePlayer2 {@code true} per rimettere in coda il secondo giocatore
      */
-    public ServerClientHandler getConnectedClient(String username) {
-        return connectedClients.get(username);
+    void endGameSession(GameSession session, boolean requeuePlayer1, boolean requeuePlayer2) {
+        if (!session.endGame()) {
+            return;
+        }
+
+        session.getPlayer1().releaseSession(session);
+        session.getPlayer2().releaseSession(session);
+        logger.info("Sessione di gioco terminata: {}", session.getSessionId());
+
+        releasePlayer(session.getPlayer1(), requeuePlayer1);
+        releasePlayer(session.getPlayer2(), requeuePlayer2);
     }
 
     /**
-     * Verifica se un client è già in una sessione di gioco.
+     * Rimette in coda, se richiesto, un giocatore della sessione terminata.
      *
-     * @param username Nome utente del client
-     * @return {@code true} se il client è in una sessione di gioco, {@code false} altrimenti
+     * @param player  Il giocatore
+     * @param requeue {@code true} per rimettere in coda il giocatore, se è ancora connesso
      */
-    private boolean isClientInGame(String username) {
-        return gameSessions.values().stream()
-            .anyMatch(session -> session.hasPlayer(username) && !session.isGameOver());
+    private void releasePlayer(PlayerSlot player, boolean requeue) {
+        ServerClientHandler handler = player.getHandler();
+        if (handler != null && requeue) {
+            handler.sendMessage(Message.createWaitOpponent());
+            enqueuePlayer(player);
+        }
     }
 
     /**
-     * Termina una sessione di gioco.
+     * Rimette in coda un giocatore connesso che non è in partita, ad esempio dopo una sconfitta
+     * a tavolino.
      *
-     * @param sessionId ID della sessione di gioco
+     * @param player Il giocatore
      */
-    public void endGameSession(String sessionId) {
-        gameSessions.remove(sessionId);
-        logger.info("Sessione di gioco terminata: {}", sessionId);
+    void requeuePlayer(PlayerSlot player) {
+        ServerClientHandler handler = player.getHandler();
+        if (handler != null && player.getSession() == null) {
+            handler.sendMessage(Message.createWaitOpponent());
+            enqueuePlayer(player);
+        }
+    }
 
-        // Verifica se è possibile avviare una nuova partita
-        checkForMatchmaking();
+    /**
+     * Restituisce le metriche per tick del matchmaking di ogni partizione della lobby.
+     *
+     * @return Le metriche del matchmaking, in ordine di partizione
+     */
+    public List<MatchmakingMetrics> getMatchmakingMetrics() {
+        List<MatchmakingMetrics> metrics = new ArrayList<>(shards.length);
+        for (LobbyShard shard : shards) {
+            metrics.add(shard.getMatchmaking().getMetrics());
+        }
+        return metrics;
     }
 
     /**
@@ -191,13 +446,91 @@ public class Server {
         return serverKeyPair;
     }
 
+    /**
+     * Crea la coda di uscita di una nuova connessione, con i budget della configurazione.
+     *
+     * @return La coda di uscita
+     */
+    OutboundQueue createOutboundQueue() {
+        return new OutboundQueue(config.getOutboundQueueFrames(), config.getOutboundQueueBytes());
+    }
+
+    /**
+     * Restituisce i contatori degli interventi della politica di backpressure.
+     *
+     * @return Le metriche di backpressure
+     */
+    public BackpressureMetrics getBackpressureMetrics() {
+        return backpressureMetrics;
+    }
+
+    /**
+     * Restituisce il timer condiviso per le scadenze delle connessioni.
+     *
+     * @return Il timer del server
+     */
+    HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Restituisce l'executor del server, usato anche per i task di scrittura dei trasporti bloccanti.
+     *
+     * @return L'executor del server
+     */
+    Executor getExecutor() {
+        return executorService;
+    }
+
+    /**
+     * Restituisce l'executor che esegue la crittografia dell'handshake fuori dagli event loop NIO.
+     *
+     * @return L'executor dell'handshake, o {@code null} se il motore non è NIO
+     */
+    Executor getHandshakeExecutor() {
+        return handshakeExecutor;
+    }
+
+    /**
+     * Crea l'executor dell'handshake, con un thread per core: il lavoro è solo calcolo
+     * e più thread non aumenterebbero il numero di handshake completati.
+     *
+     * @return L'executor dell'handshake
+     */
+    private static ExecutorService createHandshakeExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "rps-handshake-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Restituisce il gestore dei ticket di ripresa della sessione.
+     *
+     * @return Il gestore dei ticket, o {@code null} se la ripresa è disabilitata
+     */
+    TicketKeyManager getTicketKeyManager() {
+        return ticketKeyManager;
+    }
+
+    /**
+     * Restituisce la configurazione del server.
+     *
+     * @return La configurazione del server
+     */
+    public ServerConfig getConfig() {
+        return config;
+    }
+
     /**
      * Avvia il server.
      *
-     * @param args Argomenti della riga di comando
+     * @param args Argomenti della riga di comando (vedi {@link ServerConfig#fromArgs(String[])})
      */
     public static void main(String[] args) {
-        Server server = new Server();
+        Server server = new Server(ServerConfig.fromArgs(args));
         server.start();
     }
 }
\ No newline at end of file
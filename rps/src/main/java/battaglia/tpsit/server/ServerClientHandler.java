@@ -1,41 +1,63 @@
 package battaglia.tpsit.server;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.PrivateKey;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.crypto.SecretKey;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 
+import battaglia.tpsit.common.BinaryCodec;
+import battaglia.tpsit.common.CryptoContext;
 import battaglia.tpsit.common.CryptoUtils;
 import battaglia.tpsit.common.GameMoves;
 import battaglia.tpsit.common.GameResult;
+import battaglia.tpsit.common.JsonCodec;
+import battaglia.tpsit.common.JsonLineCodec;
 import battaglia.tpsit.common.Message;
+import battaglia.tpsit.common.MessageCodec;
+import battaglia.tpsit.common.MessageType;
+import battaglia.tpsit.common.ProtocolFeatures;
 
 /**
  * Gestore della connessione con un singolo client sul lato server.
+ * Con il motore bloccante viene eseguito in un thread dedicato tramite {@link #run()};
+ * con il motore NIO riceve i frame dall'event loop tramite {@link #handleInbound(ByteBuffer)}.
+ * I messaggi usano il codec JSON finché il client non negozia il codec binario nell'HELLO.
  */
 public class ServerClientHandler implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(ServerClientHandler.class);
+    private static final int READ_BUFFER_SIZE = 1024; // I messaggi del protocollo sono brevi
+    private static final int MOVE_BUFFER_SIZE = 64; // Basta per qualsiasi mossa cifrata valida
     
     private Server server;
-    private Socket clientSocket;
-    private BufferedReader reader;
-    private BufferedWriter writer;
+    private ClientTransport transport;
+    private InputStream input;
     private String username;
     private PrivateKey privateKey;
-    private SecretKey aesKey;
-    private GameSession currentGameSession;
-    private ObjectMapper objectMapper;
-    private boolean running;
+    private KeyPair keyExchangePair;
+    private volatile CryptoContext crypto;
+    private boolean authenticatedEncryption;
+    private boolean compactMoves;
+    private final ByteBuffer moveBuffer = ByteBuffer.allocate(MOVE_BUFFER_SIZE);
+    private volatile PlayerSlot player;
+    private volatile MessageCodec codec;
+    private AtomicBoolean running;
+    private volatile boolean heartbeat;
+    private volatile long lastReadNanos;
+    private volatile HashedWheelTimer.Timeout idleCheck;
+    private volatile boolean handshakeInProgress;
     
     /**
      * Costruttore per il gestore della connessione con un client.
@@ -45,15 +67,49 @@ public class ServerClientHandler implements Runnable {
      * @param serverKeyPair La coppia di chiavi RSA del server
      */
     public ServerClientHandler(Server server, Socket clientSocket, KeyPair serverKeyPair) {
+        this(server, createSocketTransport(server, clientSocket), serverKeyPair);
+        
+        try {
+            this.input = new BufferedInputStream(clientSocket.getInputStream(), READ_BUFFER_SIZE);
+        } catch (IOException e) {
+            logger.error("Errore durante l'inizializzazione degli stream", e);
+            throw new RuntimeException("Impossibile inizializzare gli stream");
+        }
+    }
+
+    /**
+     * Costruttore per il gestore di una connessione servita da un trasporto non bloccante.
+     * I messaggi in arrivo vengono consegnati tramite {@link #handleInbound(ByteBuffer)}.
+     * 
+     * @param server Il server principale
+     * @param transport Il trasporto verso il client
+     * @param serverKeyPair La coppia di chiavi RSA del server
+     */
+    ServerClientHandler(Server server, ClientTransport transport, KeyPair serverKeyPair) {
         this.server = server;
-        this.clientSocket = clientSocket;
+        this.transport = transport;
         this.privateKey = serverKeyPair.getPrivate();
-        this.objectMapper = new ObjectMapper();
-        this.running = true;
-        
+        this.codec = new JsonLineCodec();
+        this.running = new AtomicBoolean(true);
+        transport.setDrainListener(this::onOutboundDrained);
+
+        // Le connessioni che non inviano nulla vengono chiuse dopo il timeout di inattività
+        this.lastReadNanos = System.nanoTime();
+        if (server.getConfig().getIdleTimeoutSeconds() > 0) {
+            scheduleIdleCheck(TimeUnit.SECONDS.toNanos(server.getConfig().getHeartbeatSeconds()));
+        }
+    }
+
+    /**
+     * Crea il trasporto bloccante per un socket, con la scrittura affidata all'executor del server.
+     * 
+     * @param server Il server principale
+     * @param clientSocket Il socket del client
+     * @return Il trasporto associato al socket
+     */
+    private static ClientTransport createSocketTransport(Server server, Socket clientSocket) {
         try {
-            this.reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            this.writer = new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream()));
+            return new SocketTransport(clientSocket, server.getExecutor(), server.createOutboundQueue());
         } catch (IOException e) {
             logger.error("Errore durante l'inizializzazione degli stream", e);
             throw new RuntimeException("Impossibile inizializzare gli stream");
@@ -66,22 +122,47 @@ public class ServerClientHandler implements Runnable {
      */
     @Override
     public void run() {
+        if (input == null) {
+            throw new IllegalStateException("Il gestore non è associato a un socket bloccante");
+        }
+
         try {
-            while (running) {
-                String messageStr = reader.readLine();
-                if (messageStr == null) {
+            while (running.get()) {
+                Message message = codec.read(input);
+                if (message == null) {
                     break; // Client disconnesso
                 }
                 
-                Message message = objectMapper.readValue(messageStr, Message.class);
                 handleMessage(message);
             }
         } catch (IOException e) {
-            logger.error("Errore durante la comunicazione con il client", e);
+            if (running.get()) {
+                logger.error("Errore durante la comunicazione con il client", e);
+            }
         } finally {
             closeConnection();
         }
     }
+
+    /**
+     * Decodifica e gestisce tutti i frame completi presenti nel buffer ricevuto dal motore NIO.
+     * I byte di un eventuale frame incompleto restano nel buffer, come quelli dei frame arrivati
+     * mentre un passo dell'handshake è in corso su un altro thread.
+     * 
+     * @param buffer Il buffer in modalità lettura con i dati ricevuti
+     */
+    void handleInbound(ByteBuffer buffer) {
+        try {
+            Message message;
+            // Il codec viene riletto a ogni frame perché l'HELLO può cambiarlo
+            while (running.get() && !handshakeInProgress && (message = codec.decode(buffer)) != null) {
+                handleMessage(message);
+            }
+        } catch (IOException e) {
+            logger.error("Messaggio non valido ricevuto dal client", e);
+            closeConnection();
+        }
+    }
     
     /**
      * Gestisce un messaggio ricevuto dal client.
@@ -89,6 +170,7 @@ public class ServerClientHandler implements Runnable {
      * @param message Il messaggio ricevuto
      */
     private void handleMessage(Message message) {
+        lastReadNanos = System.nanoTime();
         try {
             switch (message.getType()) {
                 case HELLO:
@@ -103,6 +185,11 @@ public class ServerClientHandler implements Runnable {
                 case READY:
                     handleReady();
                     break;
+                case PING:
+                    sendMessage(Message.createPong());
+                    break;
+                case PONG:
+                    break; // Basta aver aggiornato l'istante dell'ultima lettura
                 default:
                     logger.warn("Tipo di messaggio non gestito: {}", message.getType());
             }
@@ -122,13 +209,121 @@ public class ServerClientHandler implements Runnable {
         this.username = message.getUsername();
         logger.info("Richiesta di connessione da: {}", username);
         
-        // Invia la chiave pubblica RSA al client
-        String publicKeyBase64 = CryptoUtils.encodePublicKey(server.getServerKeyPair().getPublic());
-        Message response = Message.createPublicKey(publicKeyBase64);
-        sendMessage(response);
+        // Le funzionalità opzionali vengono usate solo se richieste dal client
+        boolean binary = ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.BINARY);
+        authenticatedEncryption = ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.GCM);
+        String acceptedFeatures = binary ? ProtocolFeatures.BINARY : null;
+        if (authenticatedEncryption) {
+            acceptedFeatures = ProtocolFeatures.add(acceptedFeatures, ProtocolFeatures.GCM);
+        }
+        heartbeat = ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.HEARTBEAT);
+        if (heartbeat) {
+            acceptedFeatures = ProtocolFeatures.add(acceptedFeatures, ProtocolFeatures.HEARTBEAT);
+        }
+        compactMoves = ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.MOVE8);
+        if (compactMoves) {
+            acceptedFeatures = ProtocolFeatures.add(acceptedFeatures, ProtocolFeatures.MOVE8);
+        }
+
+        // Un HELLO con ticket valido riprende la sessione senza scambio di chiavi;
+        // se il ticket non è valido si prosegue con l'handshake completo
+        if (message.getKey() != null && resumeSession(message, binary, acceptedFeatures)) {
+            return;
+        }
+
+        // Con X25519 il server invia una chiave effimera al posto di quella RSA,
+        // evitando la costosa decifratura RSA della chiave AES
+        if (ProtocolFeatures.contains(message.getFeatures(), ProtocolFeatures.X25519)) {
+            String features = ProtocolFeatures.add(acceptedFeatures, ProtocolFeatures.X25519);
+            offloadHandshake(CryptoUtils::generateX25519KeyPair, pair -> {
+                keyExchangePair = pair;
+                sendPublicKey(CryptoUtils.encodePublicKey(pair.getPublic()), features, binary);
+            });
+        } else {
+            sendPublicKey(CryptoUtils.encodePublicKey(server.getServerKeyPair().getPublic()), acceptedFeatures, binary);
+        }
+    }
+
+    /**
+     * Invia la chiave pubblica al client, passa al codec negoziato e registra il client sul server.
+     * 
+     * @param publicKeyBase64 La chiave pubblica RSA o X25519 codificata in Base64
+     * @param acceptedFeatures Le funzionalità accettate dal server
+     * @param binary {@code true} se il client ha richiesto il codec binario
+     */
+    private void sendPublicKey(String publicKeyBase64, String acceptedFeatures, boolean binary) {
+        // Il PUBLIC_KEY viene inviato sempre con il codec corrente
+        sendMessage(Message.createPublicKey(publicKeyBase64, acceptedFeatures));
+
+        // Dopo il PUBLIC_KEY entrambi i lati passano al codec negoziato
+        activateCodec(binary);
         
         // Registra il client sul server
-        server.registerClient(username, this);
+        player = server.registerClient(username, this);
+    }
+
+    /**
+     * Riprende una sessione precedente a partire dal ticket presentato nell'HELLO.
+     * 
+     * @param message Il messaggio HELLO con il ticket e il nonce del client
+     * @param binary {@code true} se il client ha richiesto il codec binario
+     * @param acceptedFeatures Le funzionalità accettate dal server
+     * @return {@code true} se la sessione è stata ripresa
+     * @throws Exception Se si verifica un errore durante la ripresa
+     */
+    private boolean resumeSession(Message message, boolean binary, String acceptedFeatures) throws Exception {
+        TicketKeyManager tickets = server.getTicketKeyManager();
+        byte[] clientNonce = message.getPayload();
+        if (tickets == null || clientNonce == null) {
+            return false;
+        }
+
+        byte[] secret = tickets.open(message.getKey(), username);
+        if (secret == null) {
+            logger.debug("Ticket di ripresa rifiutato per l'utente: {}", username);
+            return false;
+        }
+
+        // Deriva una nuova chiave dal segreto del ticket e dai nonce di entrambi i lati
+        byte[] serverNonce = CryptoUtils.generateNonce();
+        SecretKey aesKey = CryptoUtils.deriveResumedAESKey(secret, clientNonce, serverNonce);
+        this.crypto = CryptoContext.forServer(aesKey, authenticatedEncryption);
+        logger.debug("Sessione ripresa tramite ticket per l'utente: {}", username);
+
+        sendMessage(Message.createResumed(serverNonce, acceptedFeatures));
+        activateCodec(binary);
+        sendSessionTicket();
+        sendMessage(Message.createWaitOpponent());
+
+        player = server.registerClient(username, this);
+        return true;
+    }
+
+    /**
+     * Passa al codec negoziato con il client.
+     * 
+     * @param binary {@code true} se è stato negoziato il codec binario
+     */
+    private void activateCodec(boolean binary) {
+        if (binary) {
+            codec = new BinaryCodec();
+            logger.debug("Codec binario attivato per l'utente: {}", username);
+        }
+    }
+
+    /**
+     * Invia al client un nuovo ticket per riprendere la sessione corrente, se la ripresa è abilitata.
+     * 
+     * @throws Exception Se si verifica un errore durante l'emissione del ticket
+     */
+    private void sendSessionTicket() throws Exception {
+        TicketKeyManager tickets = server.getTicketKeyManager();
+        if (tickets == null) {
+            return;
+        }
+
+        String ticket = tickets.issue(username, crypto.getKey().getEncoded());
+        sendMessage(Message.createSessionTicket(ticket, tickets.getLifetimeSeconds()));
     }
     
     /**
@@ -137,14 +332,83 @@ public class ServerClientHandler implements Runnable {
      * @param message Il messaggio AES_KEY
      * @throws Exception Se si verifica un errore durante la gestione
      */
-    private void handleAesKey(Message message) throws Exception {
-        String encryptedKeyBase64 = message.getKey();
-        this.aesKey = CryptoUtils.decryptAESKeyWithRSA(encryptedKeyBase64, privateKey);
-        logger.debug("Chiave AES ricevuta e decifrata per l'utente: {}", username);
+    private void handleAesKey(Message message) {
+        String key = message.getKey();
+        if (keyExchangePair != null) {
+            // Il messaggio contiene la chiave pubblica X25519 del client
+            PrivateKey exchangeKey = keyExchangePair.getPrivate();
+            keyExchangePair = null;
+            offloadHandshake(() -> CryptoUtils.deriveAESKeyWithX25519(exchangeKey,
+                    CryptoUtils.decodeX25519PublicKey(key)), aesKey -> {
+                logger.debug("Chiave AES derivata con X25519 per l'utente: {}", username);
+                completeHandshake(aesKey);
+            });
+        } else {
+            PrivateKey rsaKey = privateKey;
+            offloadHandshake(() -> CryptoUtils.decryptAESKeyWithRSA(key, rsaKey), aesKey -> {
+                logger.debug("Chiave AES ricevuta e decifrata per l'utente: {}", username);
+                completeHandshake(aesKey);
+            });
+        }
+    }
+
+    /**
+     * Conclude l'handshake con la chiave AES concordata con il client.
+     * 
+     * @param aesKey La chiave AES della connessione
+     * @throws Exception Se si verifica un errore durante l'emissione del ticket
+     */
+    private void completeHandshake(SecretKey aesKey) throws Exception {
+        this.crypto = CryptoContext.forServer(aesKey, authenticatedEncryption);
+        sendSessionTicket();
         
         // Notifica al client di aspettare un avversario
         sendMessage(Message.createWaitOpponent());
     }
+
+    /**
+     * Esegue un passo costoso dell'handshake tramite il trasporto, che con il motore NIO lo affida
+     * a un thread separato dall'event loop. Il risultato viene applicato sul thread della connessione
+     * e fino ad allora i messaggi successivi del client restano nel buffer di lettura.
+     * 
+     * @param <T> Il tipo del risultato del calcolo
+     * @param computation Il calcolo crittografico, che non deve accedere allo stato del gestore
+     * @param step Il passo che applica il risultato
+     */
+    private <T> void offloadHandshake(Callable<T> computation, HandshakeStep<T> step) {
+        handshakeInProgress = true;
+        transport.offload(() -> {
+            T result;
+            try {
+                result = computation.call();
+            } catch (Exception e) {
+                return () -> {
+                    handshakeInProgress = false;
+                    logger.error("Errore durante l'handshake con l'utente: {}", username, e);
+                    sendErrorMessage("Errore interno del server");
+                };
+            }
+            return () -> {
+                handshakeInProgress = false;
+                try {
+                    step.apply(result);
+                } catch (Exception e) {
+                    logger.error("Errore durante l'handshake con l'utente: {}", username, e);
+                    sendErrorMessage("Errore interno del server");
+                }
+            };
+        });
+    }
+
+    /**
+     * Passo dell'handshake che applica il risultato di un calcolo crittografico.
+     * 
+     * @param <T> Il tipo del risultato
+     */
+    @FunctionalInterface
+    private interface HandshakeStep<T> {
+        void apply(T result) throws Exception;
+    }
     
     /**
      * Gestisce un messaggio di tipo MOVE.
@@ -153,18 +417,47 @@ public class ServerClientHandler implements Runnable {
      * @throws Exception Se si verifica un errore durante la gestione
      */
     private void handleMove(Message message) throws Exception {
-        if (currentGameSession == null) {
+        GameSession session = currentGameSession();
+        if (session == null) {
             sendErrorMessage("Nessuna partita in corso");
             return;
         }
         
         // Decrittografa la mossa
-        String encryptedMoveBase64 = message.getData();
-        String moveStr = CryptoUtils.decryptWithAES(encryptedMoveBase64, aesKey);
-        GameMoves move = GameMoves.valueOf(moveStr);
+        byte[] encryptedMove = message.getPayload();
+        GameMoves move;
+        if (compactMoves) {
+            move = decryptCompactMove(encryptedMove);
+            if (move == null) {
+                sendErrorMessage("Mossa non valida");
+                return;
+            }
+        } else {
+            String moveStr = new String(crypto.decrypt(encryptedMove), StandardCharsets.UTF_8);
+            move = GameMoves.valueOf(moveStr);
+        }
         
         // Registra la mossa nella sessione di gioco
-        currentGameSession.registerMove(username, move);
+        session.registerMove(player.getId(), move);
+    }
+
+    /**
+     * Decifra una mossa inviata come singolo byte con l'ordinale, nel buffer riusato dalla connessione.
+     * I messaggi MOVE vengono letti solo dal thread della connessione, quindi il buffer non è condiviso.
+     * 
+     * @param encryptedMove La mossa cifrata
+     * @return La mossa, o {@code null} se il messaggio non contiene un ordinale valido
+     * @throws GeneralSecurityException Se la mossa non può essere decifrata
+     */
+    private GameMoves decryptCompactMove(byte[] encryptedMove) throws GeneralSecurityException {
+        if (encryptedMove == null || encryptedMove.length > MOVE_BUFFER_SIZE) {
+            return null;
+        }
+        moveBuffer.clear();
+        if (crypto.decrypt(ByteBuffer.wrap(encryptedMove), moveBuffer) != 1) {
+            return null;
+        }
+        return GameMoves.fromOrdinal(moveBuffer.get(0) & 0xFF);
     }
 
     /**
@@ -177,10 +470,20 @@ public class ServerClientHandler implements Runnable {
     
     /**
      * Registra che il giocatore è pronto per la prossima manche.
+     * Se la sessione è già terminata, ad esempio dopo una sconfitta a tavolino,
+     * il giocatore torna in coda per una nuova partita.
      */
     public void readyForNextRound() {
-        if (currentGameSession != null) {
-            currentGameSession.playerReadyForNextRound(username);
+        PlayerSlot current = player;
+        if (current == null || current.getHandler() != this) {
+            // Connessione sostituita da una più recente dello stesso utente: non rappresenta più il giocatore
+            return;
+        }
+        GameSession session = currentGameSession();
+        if (session != null) {
+            session.playerReadyForNextRound(current.getId());
+        } else {
+            server.requeuePlayer(current);
         }
     }
     
@@ -191,15 +494,113 @@ public class ServerClientHandler implements Runnable {
      */
     public void sendMessage(Message message) {
         try {
-            String messageJson = objectMapper.writeValueAsString(message);
-            writer.write(messageJson);
-            writer.newLine();
-            writer.flush();
+            byte[] frame = codec.encode(message);
+            if (!transport.send(frame, false)) {
+                applyBackpressure(message, frame);
+            }
         } catch (IOException e) {
             logger.error("Errore durante l'invio del messaggio", e);
             closeConnection();
         }
     }
+
+    /**
+     * Applica la politica di backpressure a un frame che supera il budget della coda di uscita.
+     * 
+     * @param message Il messaggio da inviare
+     * @param frame Il frame già codificato
+     * @throws IOException Se si verifica un errore durante l'invio
+     */
+    private void applyBackpressure(Message message, byte[] frame) throws IOException {
+        BackpressureMetrics metrics = server.getBackpressureMetrics();
+        metrics.recordBudgetExceeded();
+
+        switch (server.getConfig().getBackpressurePolicy()) {
+            case DROP_LOBBY:
+                if (message.getType() == MessageType.WAIT_OPPONENT) {
+                    metrics.recordFrameDropped();
+                    logger.debug("Aggiornamento della lobby scartato per il client lento: {}", username);
+                    return;
+                }
+                break;
+            case PAUSE_SESSION:
+                if (transport.send(frame, true)) {
+                    // La sessione non avvierà nuove manche finché la coda non sarà svuotata
+                    metrics.recordSessionPaused();
+                    logger.debug("Sessione sospesa in attesa del client lento: {}", username);
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+
+        metrics.recordSlowConsumerDisconnected();
+        logger.warn("Client troppo lento, disconnessione di: {}", username);
+        closeConnection();
+    }
+
+    /**
+     * Pianifica il prossimo controllo di inattività sul timer del server.
+     * 
+     * @param delayNanos Il ritardo in nanosecondi
+     */
+    private void scheduleIdleCheck(long delayNanos) {
+        idleCheck = server.getTimer().schedule(this::checkIdle, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Controlla da quanto tempo il client non invia messaggi, eseguito dal thread del timer.
+     * L'istante dell'ultima lettura viene solo annotato a ogni messaggio: il controllo è pianificato
+     * di nuovo solo quando scade, quindi ogni connessione ha al più una scadenza sul timer.
+     * Se il client supporta l'heartbeat riceve un PING dopo l'intervallo configurato; in ogni caso
+     * la connessione viene chiusa dopo il timeout di inattività. I client che non supportano
+     * l'heartbeat non vengono più controllati dopo l'HELLO, perché in attesa di un avversario
+     * restano legittimamente in silenzio.
+     */
+    private void checkIdle() {
+        if (!running.get() || (username != null && !heartbeat)) {
+            return;
+        }
+
+        long idleNanos = System.nanoTime() - lastReadNanos;
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(server.getConfig().getIdleTimeoutSeconds());
+        long intervalNanos = TimeUnit.SECONDS.toNanos(server.getConfig().getHeartbeatSeconds());
+        if (idleNanos >= timeoutNanos) {
+            logger.info("Connessione inattiva chiusa: {}", username != null ? username : "client sconosciuto");
+            closeConnection();
+            return;
+        }
+
+        long delayNanos = intervalNanos - idleNanos;
+        if (delayNanos <= 0) {
+            if (heartbeat) {
+                sendMessage(Message.createPing());
+            }
+            delayNanos = intervalNanos;
+        }
+        scheduleIdleCheck(Math.min(delayNanos, timeoutNanos - idleNanos));
+    }
+
+    /**
+     * Indica se il client è in ritardo nella lettura dei messaggi già accodati.
+     * 
+     * @return {@code true} se la coda di uscita è oltre il budget
+     */
+    public boolean isCongested() {
+        return transport.isCongested();
+    }
+
+    /**
+     * Invocato quando la coda di uscita torna vuota dopo una congestione:
+     * riprende l'eventuale sessione sospesa.
+     */
+    private void onOutboundDrained() {
+        GameSession session = currentGameSession();
+        if (session != null) {
+            session.resumeIfPaused();
+        }
+    }
     
     /**
      * Invia un messaggio di errore al client.
@@ -222,27 +623,33 @@ public class ServerClientHandler implements Runnable {
     }
     
     /**
-     * Imposta la sessione di gioco corrente.
+     * Restituisce la sessione di gioco corrente, letta dallo slot del giocatore.
+     * Se lo stesso utente si è riconnesso lo slot appartiene alla nuova connessione, e questa
+     * non deve poter muovere o dichiararsi pronta nella sessione dell'altra.
      * 
-     * @param gameSession La sessione di gioco
+     * @return La sessione di gioco, o {@code null} se il client non è in partita, non è registrato
+     *         o è stato sostituito da una connessione più recente
      */
-    public void setCurrentGameSession(GameSession gameSession) {
-        this.currentGameSession = gameSession;
+    private GameSession currentGameSession() {
+        PlayerSlot current = player;
+        return current != null && current.getHandler() == this ? current.getSession() : null;
     }
     
     /**
      * Chiude la connessione con il client.
      */
     public void closeConnection() {
-        if (running) {
-            running = false;
+        if (running.compareAndSet(true, false)) {
+            HashedWheelTimer.Timeout check = idleCheck;
+            if (check != null) {
+                check.cancel();
+            }
             try {
-                if (reader != null) reader.close();
-                if (writer != null) writer.close();
-                if (clientSocket != null) clientSocket.close();
+                if (input != null) input.close();
+                transport.close();
                 
-                if (username != null) {
-                    server.removeClient(username);
+                if (player != null) {
+                    server.removeClient(player, this);
                 }
                 
                 logger.info("Connessione chiusa con: {}", username != null ? username : "client sconosciuto");
@@ -259,10 +666,23 @@ public class ServerClientHandler implements Runnable {
      */
     public void sendGameResult(GameResult result) {
         try {
-            String resultJson = objectMapper.writeValueAsString(result);
-            String encryptedResultBase64 = CryptoUtils.encryptWithAES(resultJson, aesKey);
+            sendGameResult(JsonCodec.writeResult(result));
+        } catch (IOException e) {
+            logger.error("Errore durante la serializzazione del risultato di gioco", e);
+        }
+    }
+
+    /**
+     * Invia al client il risultato della partita già serializzato in JSON.
+     * Lo stesso array può essere inviato a entrambi i giocatori: viene solo letto durante la cifratura.
+     * 
+     * @param resultJson I byte UTF-8 del risultato
+     */
+    public void sendGameResult(byte[] resultJson) {
+        try {
+            byte[] encryptedResult = crypto.encrypt(resultJson);
             
-            Message resultMessage = Message.createResult(encryptedResultBase64);
+            Message resultMessage = Message.createResult(encryptedResult);
             sendMessage(resultMessage);
         } catch (Exception e) {
             logger.error("Errore durante l'invio del risultato di gioco", e);
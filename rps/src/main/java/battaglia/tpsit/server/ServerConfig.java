@@ -0,0 +1,469 @@
+package battaglia.tpsit.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import battaglia.tpsit.common.MessageCodec;
+
+/**
+ * Configurazione di avvio del server.
+ * I valori possono essere letti dagli argomenti della riga di comando nel formato {@code --chiave=valore}.
+ */
+public class ServerConfig {
+    private static final Logger logger = LoggerFactory.getLogger(ServerConfig.class);
+
+    public static final int DEFAULT_PORT = 12345;
+    public static final int DEFAULT_ACCEPT_BACKLOG = 4096;
+    public static final long DEFAULT_TICKET_LIFETIME_SECONDS = 600;
+    public static final String DEFAULT_KEY_FILE = "server-keys.properties";
+    public static final int DEFAULT_OUTBOUND_QUEUE_FRAMES = 256;
+    public static final long DEFAULT_OUTBOUND_QUEUE_BYTES = 256 * 1024;
+    public static final long DEFAULT_HEARTBEAT_SECONDS = 15;
+    public static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 45;
+    public static final long DEFAULT_MOVE_TIMEOUT_SECONDS = 30;
+    public static final double DEFAULT_MATCH_RANGE = 100;
+    public static final double DEFAULT_MATCH_WIDEN_PER_SECOND = 25;
+    public static final long DEFAULT_MATCH_TICK_MILLIS = 100;
+
+    private int port;
+    private int acceptBacklog;
+    private ServerEngine engine;
+    private int eventLoopThreads;
+    private long ticketLifetimeSeconds;
+    private String keyFile;
+    private int outboundQueueFrames;
+    private long outboundQueueBytes;
+    private BackpressurePolicy backpressurePolicy;
+    private long heartbeatSeconds;
+    private long idleTimeoutSeconds;
+    private long moveTimeoutSeconds;
+    private double matchRange;
+    private double matchWidenPerSecond;
+    private long matchTickMillis;
+    private int lobbyShards;
+
+    /**
+     * Costruttore con i valori predefiniti: porta {@value #DEFAULT_PORT}, motore bloccante,
+     * un event loop per ogni processore disponibile, ticket di ripresa validi
+     * {@value #DEFAULT_TICKET_LIFETIME_SECONDS} secondi, chiavi RSA salvate in {@value #DEFAULT_KEY_FILE}
+     * e al massimo {@value #DEFAULT_OUTBOUND_QUEUE_FRAMES} frame o {@value #DEFAULT_OUTBOUND_QUEUE_BYTES} byte
+     * in uscita in attesa per connessione, con aggiornamenti della lobby scartati oltre il budget,
+     * PING dopo {@value #DEFAULT_HEARTBEAT_SECONDS} secondi di inattività e chiusura delle connessioni
+     * inattive da {@value #DEFAULT_IDLE_TIMEOUT_SECONDS} secondi; ogni manche termina a tavolino
+     * se una mossa non arriva entro {@value #DEFAULT_MOVE_TIMEOUT_SECONDS} secondi. Il matchmaking accoppia
+     * giocatori con punteggio Elo distante al massimo {@value #DEFAULT_MATCH_RANGE} punti, allargando
+     * l'intervallo di {@value #DEFAULT_MATCH_WIDEN_PER_SECOND} punti per ogni secondo di attesa, con un tick
+     * ogni {@value #DEFAULT_MATCH_TICK_MILLIS} millisecondi e una partizione della lobby per ogni processore.
+     */
+    public ServerConfig() {
+        this.port = DEFAULT_PORT;
+        this.acceptBacklog = DEFAULT_ACCEPT_BACKLOG;
+        this.engine = ServerEngine.BLOCKING;
+        this.eventLoopThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.ticketLifetimeSeconds = DEFAULT_TICKET_LIFETIME_SECONDS;
+        this.keyFile = DEFAULT_KEY_FILE;
+        this.outboundQueueFrames = DEFAULT_OUTBOUND_QUEUE_FRAMES;
+        this.outboundQueueBytes = DEFAULT_OUTBOUND_QUEUE_BYTES;
+        this.backpressurePolicy = BackpressurePolicy.DROP_LOBBY;
+        this.heartbeatSeconds = DEFAULT_HEARTBEAT_SECONDS;
+        this.idleTimeoutSeconds = DEFAULT_IDLE_TIMEOUT_SECONDS;
+        this.moveTimeoutSeconds = DEFAULT_MOVE_TIMEOUT_SECONDS;
+        this.matchRange = DEFAULT_MATCH_RANGE;
+        this.matchWidenPerSecond = DEFAULT_MATCH_WIDEN_PER_SECOND;
+        this.matchTickMillis = DEFAULT_MATCH_TICK_MILLIS;
+        this.lobbyShards = Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea una configurazione a partire dagli argomenti della riga di comando.
+     * Opzioni riconosciute:
+     * <ul>
+     *     <li>{@code --port=N}: Porta di ascolto (0 per una porta libera scelta dal sistema)</li>
+     *     <li>{@code --backlog=N}: Connessioni in attesa di essere accettate, oltre le quali il sistema le rifiuta</li>
+     *     <li>{@code --engine=blocking|virtual|nio}: Motore di gestione delle connessioni</li>
+     *     <li>{@code --loops=N}: Numero di event loop del motore NIO</li>
+     *     <li>{@code --ticket-lifetime=S}: Durata in secondi dei ticket di ripresa (0 li disabilita)</li>
+     *     <li>{@code --key-file=PERCORSO}: File delle chiavi RSA (vuoto per generarle a ogni avvio)</li>
+     *     <li>{@code --outbound-queue=N}: Frame in uscita in attesa per connessione</li>
+     *     <li>{@code --outbound-bytes=N}: Byte in uscita in attesa per connessione</li>
+     *     <li>{@code --backpressure=drop-lobby|disconnect|pause-session}: Politica per i client lenti</li>
+     *     <li>{@code --heartbeat=S}: Secondi di inattività dopo cui inviare un PING</li>
+     *     <li>{@code --idle-timeout=S}: Secondi di inattività dopo cui chiudere la connessione (0 disabilita)</li>
+     *     <li>{@code --move-timeout=S}: Secondi a disposizione per scegliere la mossa (0 disabilita)</li>
+     *     <li>{@code --match-range=N}: Differenza di punteggio accettata appena entrati in coda</li>
+     *     <li>{@code --match-widen=N}: Punti di cui l'intervallo si allarga per ogni secondo di attesa</li>
+     *     <li>{@code --match-tick=MS}: Millisecondi tra due tick del matchmaking</li>
+     *     <li>{@code --shards=N}: Numero di partizioni della lobby, ognuna con il proprio matchmaking</li>
+     * </ul>
+     *
+     * @param args Argomenti della riga di comando
+     * @return La configurazione risultante
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                continue;
+            }
+
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            try {
+                switch (name) {
+                    case "port":
+                        config.setPort(Integer.parseInt(value));
+                        break;
+                    case "backlog":
+                        config.setAcceptBacklog(Integer.parseInt(value));
+                        break;
+                    case "engine":
+                        config.setEngine(ServerEngine.fromString(value));
+                        break;
+                    case "loops":
+                        config.setEventLoopThreads(Integer.parseInt(value));
+                        break;
+                    case "ticket-lifetime":
+                        config.setTicketLifetimeSeconds(Long.parseLong(value));
+                        break;
+                    case "key-file":
+                        config.setKeyFile(value);
+                        break;
+                    case "outbound-queue":
+                        config.setOutboundQueueFrames(Integer.parseInt(value));
+                        break;
+                    case "outbound-bytes":
+                        config.setOutboundQueueBytes(Long.parseLong(value));
+                        break;
+                    case "backpressure":
+                        config.setBackpressurePolicy(BackpressurePolicy.fromString(value));
+                        break;
+                    case "heartbeat":
+                        config.setHeartbeatSeconds(Long.parseLong(value));
+                        break;
+                    case "idle-timeout":
+                        config.setIdleTimeoutSeconds(Long.parseLong(value));
+                        break;
+                    case "move-timeout":
+                        config.setMoveTimeoutSeconds(Long.parseLong(value));
+                        break;
+                    case "match-range":
+                        config.setMatchRange(Double.parseDouble(value));
+                        break;
+                    case "match-widen":
+                        config.setMatchWidenPerSecond(Double.parseDouble(value));
+                        break;
+                    case "match-tick":
+                        config.setMatchTickMillis(Long.parseLong(value));
+                        break;
+                    case "shards":
+                        config.setLobbyShards(Integer.parseInt(value));
+                        break;
+                    default:
+                        logger.warn("Opzione del server sconosciuta: {}", arg);
+                }
+            } catch (IllegalArgumentException e) {
+                logger.warn("Valore non valido per l'opzione {}: {}", name, value);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Restituisce la porta di ascolto del server.
+     *
+     * @return La porta di ascolto
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Imposta la porta di ascolto del server.
+     *
+     * @param port La porta di ascolto
+     */
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Restituisce la lunghezza della coda delle connessioni in attesa di essere accettate.
+     *
+     * @return La lunghezza della coda
+     */
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    /**
+     * Imposta la lunghezza della coda delle connessioni in attesa di essere accettate.
+     * Il valore predefinito di Java (50) è troppo basso per un'ondata di riconnessioni;
+     * il sistema operativo può comunque limitarlo (ad esempio con {@code somaxconn} su Linux).
+     *
+     * @param acceptBacklog La lunghezza della coda (almeno 1)
+     */
+    public void setAcceptBacklog(int acceptBacklog) {
+        this.acceptBacklog = Math.max(1, acceptBacklog);
+    }
+
+    /**
+     * Restituisce il motore di gestione delle connessioni.
+     *
+     * @return Il motore selezionato
+     */
+    public ServerEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Imposta il motore di gestione delle connessioni.
+     *
+     * @param engine Il motore da utilizzare
+     */
+    public void setEngine(ServerEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Restituisce il numero di event loop usati dal motore NIO.
+     *
+     * @return Il numero di event loop
+     */
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    /**
+     * Imposta il numero di event loop usati dal motore NIO.
+     *
+     * @param eventLoopThreads Il numero di event loop (almeno 1)
+     */
+    public void setEventLoopThreads(int eventLoopThreads) {
+        this.eventLoopThreads = Math.max(1, eventLoopThreads);
+    }
+
+    /**
+     * Restituisce la durata dei ticket di ripresa della sessione, che è anche
+     * l'intervallo di rotazione delle chiavi con cui sono cifrati.
+     *
+     * @return La durata in secondi, 0 se la ripresa è disabilitata
+     */
+    public long getTicketLifetimeSeconds() {
+        return ticketLifetimeSeconds;
+    }
+
+    /**
+     * Imposta la durata dei ticket di ripresa della sessione.
+     *
+     * @param ticketLifetimeSeconds La durata in secondi, 0 per disabilitare la ripresa
+     */
+    public void setTicketLifetimeSeconds(long ticketLifetimeSeconds) {
+        this.ticketLifetimeSeconds = Math.max(0, ticketLifetimeSeconds);
+    }
+
+    /**
+     * Restituisce il percorso del file in cui è salvata la coppia di chiavi RSA del server.
+     *
+     * @return Il percorso del file, o {@code null} se le chiavi vengono generate a ogni avvio
+     */
+    public String getKeyFile() {
+        return keyFile;
+    }
+
+    /**
+     * Imposta il percorso del file in cui è salvata la coppia di chiavi RSA del server.
+     *
+     * @param keyFile Il percorso del file, {@code null} o vuoto per generare le chiavi a ogni avvio
+     */
+    public void setKeyFile(String keyFile) {
+        this.keyFile = keyFile == null || keyFile.isEmpty() ? null : keyFile;
+    }
+
+    /**
+     * Restituisce il numero massimo di frame in uscita in attesa per ogni connessione.
+     * Oltre questo budget si applica la {@link #getBackpressurePolicy() politica di backpressure}.
+     *
+     * @return Il numero massimo di frame in attesa
+     */
+    public int getOutboundQueueFrames() {
+        return outboundQueueFrames;
+    }
+
+    /**
+     * Imposta il numero massimo di frame in uscita in attesa per ogni connessione.
+     *
+     * @param outboundQueueFrames Il numero massimo di frame in attesa (almeno 1)
+     */
+    public void setOutboundQueueFrames(int outboundQueueFrames) {
+        this.outboundQueueFrames = Math.max(1, outboundQueueFrames);
+    }
+
+    /**
+     * Restituisce il numero massimo di byte in uscita in attesa per ogni connessione.
+     * Oltre questo budget si applica la {@link #getBackpressurePolicy() politica di backpressure}.
+     *
+     * @return Il numero massimo di byte in attesa
+     */
+    public long getOutboundQueueBytes() {
+        return outboundQueueBytes;
+    }
+
+    /**
+     * Imposta il numero massimo di byte in uscita in attesa per ogni connessione.
+     *
+     * @param outboundQueueBytes Il numero massimo di byte in attesa (almeno la dimensione di un frame)
+     */
+    public void setOutboundQueueBytes(long outboundQueueBytes) {
+        this.outboundQueueBytes = Math.max(MessageCodec.MAX_FRAME_SIZE, outboundQueueBytes);
+    }
+
+    /**
+     * Restituisce la politica applicata ai client che superano il budget della coda di uscita.
+     *
+     * @return La politica di backpressure
+     */
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    /**
+     * Imposta la politica applicata ai client che superano il budget della coda di uscita.
+     *
+     * @param backpressurePolicy La politica di backpressure
+     */
+    public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        this.backpressurePolicy = backpressurePolicy;
+    }
+
+    /**
+     * Restituisce dopo quanti secondi di inattività il server invia un PING al client.
+     *
+     * @return L'intervallo dell'heartbeat in secondi
+     */
+    public long getHeartbeatSeconds() {
+        return heartbeatSeconds;
+    }
+
+    /**
+     * Imposta dopo quanti secondi di inattività il server invia un PING al client.
+     *
+     * @param heartbeatSeconds L'intervallo dell'heartbeat in secondi (almeno 1)
+     */
+    public void setHeartbeatSeconds(long heartbeatSeconds) {
+        this.heartbeatSeconds = Math.max(1, heartbeatSeconds);
+    }
+
+    /**
+     * Restituisce dopo quanti secondi senza messaggi dal client la connessione viene chiusa.
+     *
+     * @return Il timeout di inattività in secondi, 0 se disabilitato
+     */
+    public long getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    /**
+     * Imposta dopo quanti secondi senza messaggi dal client la connessione viene chiusa.
+     * Dovrebbe essere un multiplo dell'intervallo dell'heartbeat, così il client ha tempo di rispondere.
+     *
+     * @param idleTimeoutSeconds Il timeout di inattività in secondi, 0 per disabilitarlo
+     */
+    public void setIdleTimeoutSeconds(long idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = Math.max(0, idleTimeoutSeconds);
+    }
+
+    /**
+     * Restituisce i secondi a disposizione dei giocatori per scegliere la mossa di una manche.
+     *
+     * @return Il tempo per la mossa in secondi, 0 se disabilitato
+     */
+    public long getMoveTimeoutSeconds() {
+        return moveTimeoutSeconds;
+    }
+
+    /**
+     * Imposta i secondi a disposizione dei giocatori per scegliere la mossa di una manche.
+     * Allo scadere la manche viene assegnata a tavolino a chi ha già scelto.
+     *
+     * @param moveTimeoutSeconds Il tempo per la mossa in secondi, 0 per disabilitarlo
+     */
+    public void setMoveTimeoutSeconds(long moveTimeoutSeconds) {
+        this.moveTimeoutSeconds = Math.max(0, moveTimeoutSeconds);
+    }
+
+    /**
+     * Restituisce la differenza di punteggio Elo accettata dal matchmaking appena un giocatore entra in coda.
+     *
+     * @return La differenza di punteggio iniziale
+     */
+    public double getMatchRange() {
+        return matchRange;
+    }
+
+    /**
+     * Imposta la differenza di punteggio Elo accettata dal matchmaking appena un giocatore entra in coda.
+     *
+     * @param matchRange La differenza di punteggio iniziale
+     */
+    public void setMatchRange(double matchRange) {
+        this.matchRange = Math.max(0, matchRange);
+    }
+
+    /**
+     * Restituisce di quanti punti si allarga l'intervallo del matchmaking per ogni secondo di attesa.
+     *
+     * @return L'allargamento in punti al secondo
+     */
+    public double getMatchWidenPerSecond() {
+        return matchWidenPerSecond;
+    }
+
+    /**
+     * Imposta di quanti punti si allarga l'intervallo del matchmaking per ogni secondo di attesa.
+     *
+     * @param matchWidenPerSecond L'allargamento in punti al secondo
+     */
+    public void setMatchWidenPerSecond(double matchWidenPerSecond) {
+        this.matchWidenPerSecond = Math.max(0, matchWidenPerSecond);
+    }
+
+    /**
+     * Restituisce l'intervallo tra due tick del servizio di matchmaking.
+     *
+     * @return L'intervallo in millisecondi
+     */
+    public long getMatchTickMillis() {
+        return matchTickMillis;
+    }
+
+    /**
+     * Imposta l'intervallo tra due tick del servizio di matchmaking.
+     * Un tick più lungo raggruppa più accessi per passata, a costo di un'attesa maggiore.
+     *
+     * @param matchTickMillis L'intervallo in millisecondi (almeno 1)
+     */
+    public void setMatchTickMillis(long matchTickMillis) {
+        this.matchTickMillis = Math.max(1, matchTickMillis);
+    }
+
+    /**
+     * Restituisce il numero di partizioni della lobby.
+     *
+     * @return Il numero di partizioni
+     */
+    public int getLobbyShards() {
+        return lobbyShards;
+    }
+
+    /**
+     * Imposta il numero di partizioni della lobby. Ogni partizione ha la propria coda di attesa
+     * e il proprio thread di matchmaking; sessioni e handler stanno negli slot dei giocatori,
+     * condivisi da tutte le partizioni, quindi non esiste una tabella delle sessioni per partizione.
+     *
+     * @param lobbyShards Il numero di partizioni (almeno 1)
+     */
+    public void setLobbyShards(int lobbyShards) {
+        this.lobbyShards = Math.max(1, lobbyShards);
+    }
+}
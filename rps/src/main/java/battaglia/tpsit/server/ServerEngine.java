@@ -0,0 +1,21 @@
+package battaglia.tpsit.server;
+
+/**
+ * Enumerazione dei motori di gestione delle connessioni disponibili per il server.
+ */
+public enum ServerEngine {
+    BLOCKING, // Un thread per connessione con socket bloccanti
+    VIRTUAL,  // Un thread virtuale per connessione con socket bloccanti (JDK 21+)
+    NIO;      // Pochi event loop basati su Selector e canali non bloccanti
+
+    /**
+     * Converte una stringa nel motore corrispondente, ignorando maiuscole e minuscole.
+     *
+     * @param value Il nome del motore (es. "nio")
+     * @return Il motore corrispondente
+     * @throws IllegalArgumentException Se il nome non corrisponde a nessun motore
+     */
+    public static ServerEngine fromString(String value) {
+        return ServerEngine.valueOf(value.trim().toUpperCase());
+    }
+}
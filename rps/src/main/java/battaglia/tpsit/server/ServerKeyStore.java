@@ -0,0 +1,125 @@
+package battaglia.tpsit.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.EnumSet;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import battaglia.tpsit.common.CryptoUtils;
+
+/**
+ * Archivio su file della coppia di chiavi RSA del server.
+ * <p>
+ * Al primo avvio la coppia viene generata e salvata; agli avvii successivi viene solo letta,
+ * così il riavvio è immediato e la chiave pubblica già nota ai client resta la stessa.
+ * Il file è un {@link Properties} con le chiavi in Base64 e, dove il file system lo consente,
+ * è leggibile e scrivibile solo dal proprietario.
+ */
+final class ServerKeyStore {
+    private static final Logger logger = LoggerFactory.getLogger(ServerKeyStore.class);
+    private static final String PUBLIC_KEY_PROPERTY = "publicKey";
+    private static final String PRIVATE_KEY_PROPERTY = "privateKey";
+
+    private ServerKeyStore() {
+    }
+
+    /**
+     * Carica la coppia di chiavi dal file indicato, generandola e salvandola se il file non esiste.
+     *
+     * @param path Il percorso del file delle chiavi
+     * @return La coppia di chiavi RSA
+     * @throws Exception Se il file non è leggibile o le chiavi non possono essere generate
+     */
+    static KeyPair loadOrCreate(Path path) throws Exception {
+        if (Files.exists(path)) {
+            KeyPair keyPair = load(path);
+            logger.info("Chiavi RSA caricate da {}", path);
+            return keyPair;
+        }
+
+        KeyPair keyPair = CryptoUtils.generateRSAKeyPair();
+        try {
+            save(path, keyPair);
+            logger.info("Chiavi RSA generate e salvate in {}", path);
+        } catch (IOException e) {
+            logger.warn("Impossibile salvare le chiavi RSA in {}, verranno rigenerate al prossimo avvio", path, e);
+        }
+        return keyPair;
+    }
+
+    /**
+     * Legge la coppia di chiavi da un file.
+     *
+     * @param path Il percorso del file delle chiavi
+     * @return La coppia di chiavi RSA
+     * @throws Exception Se il file non è leggibile o non contiene chiavi valide
+     */
+    private static KeyPair load(Path path) throws Exception {
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(path)) {
+            properties.load(input);
+        }
+
+        String publicKey = properties.getProperty(PUBLIC_KEY_PROPERTY);
+        String privateKey = properties.getProperty(PRIVATE_KEY_PROPERTY);
+        if (publicKey == null || privateKey == null) {
+            throw new IOException("File delle chiavi incompleto: " + path);
+        }
+
+        PublicKey decodedPublic = CryptoUtils.decodePublicKey(publicKey);
+        PrivateKey decodedPrivate = CryptoUtils.decodePrivateKey(privateKey);
+        return new KeyPair(decodedPublic, decodedPrivate);
+    }
+
+    /**
+     * Salva la coppia di chiavi su un file nuovo.
+     * Le chiavi vengono scritte su un file temporaneo con permessi ristretti e poi spostate,
+     * così un avvio successivo non legge mai un file scritto a metà.
+     *
+     * @param path    Il percorso del file delle chiavi
+     * @param keyPair La coppia di chiavi RSA
+     * @throws IOException Se il file non può essere scritto
+     */
+    private static void save(Path path, KeyPair keyPair) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(PUBLIC_KEY_PROPERTY, CryptoUtils.encodePublicKey(keyPair.getPublic()));
+        properties.setProperty(PRIVATE_KEY_PROPERTY, CryptoUtils.encodePrivateKey(keyPair.getPrivate()));
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, ".server-keys", ".tmp");
+        try {
+            restrictToOwner(temporary);
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                properties.store(output, "Chiavi RSA del server RPS Advanced - non condividere");
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Limita i permessi di un file al solo proprietario, se il file system supporta i permessi POSIX.
+     *
+     * @param path Il percorso del file
+     */
+    private static void restrictToOwner(Path path) {
+        try {
+            Files.setPosixFilePermissions(path, EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+        } catch (UnsupportedOperationException | IOException e) {
+            logger.debug("Permessi POSIX non supportati per {}", path);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package battaglia.tpsit.server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Trasporto bloccante basato su {@link Socket}, usato dal motore thread-per-connessione.
+ * <p>
+ * I frame non vengono scritti dal thread che li invia: finiscono in una {@link OutboundQueue}
+ * svuotata da un task di scrittura eseguito sull'executor del server. Il task scrive tutti i
+ * frame in attesa nel buffer e lo svuota una sola volta, così più messaggi inviati a raffica
+ * (ad esempio GAME_START e RESULT) diventano un'unica scrittura sul socket. Un solo task alla
+ * volta scrive sulla connessione, quindi i frame non possono mai intrecciarsi.
+ */
+class SocketTransport implements ClientTransport {
+    private static final Logger logger = LoggerFactory.getLogger(SocketTransport.class);
+    private static final int WRITE_BUFFER_SIZE = 8 * 1024; // Contiene più frame accodati
+
+    private final Socket socket;
+    private final OutputStream output;
+    private final Executor writerExecutor;
+    private final OutboundQueue outbound;
+    private final AtomicBoolean writerScheduled;
+    private final AtomicBoolean closed;
+    private volatile Runnable drainListener;
+
+    /**
+     * Costruttore del trasporto.
+     *
+     * @param socket         Il socket del client
+     * @param writerExecutor L'executor su cui eseguire il task di scrittura
+     * @param outbound       La coda dei frame in attesa di essere scritti
+     * @throws IOException Se non è possibile ottenere lo stream di uscita
+     */
+    SocketTransport(Socket socket, Executor writerExecutor, OutboundQueue outbound) throws IOException {
+        this.socket = socket;
+        this.output = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+        this.writerExecutor = writerExecutor;
+        this.outbound = outbound;
+        this.writerScheduled = new AtomicBoolean(false);
+        this.closed = new AtomicBoolean(false);
+    }
+
+    @Override
+    public boolean send(byte[] frame, boolean allowOverflow) throws IOException {
+        if (closed.get()) {
+            throw new IOException("Connessione chiusa");
+        }
+        if (!outbound.offer(ByteBuffer.wrap(frame), allowOverflow)) {
+            return false;
+        }
+
+        if (writerScheduled.compareAndSet(false, true)) {
+            try {
+                writerExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                writerScheduled.set(false);
+                throw new IOException("Impossibile avviare la scrittura", e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCongested() {
+        return outbound.isCongested();
+    }
+
+    @Override
+    public void setDrainListener(Runnable listener) {
+        this.drainListener = listener;
+    }
+
+    /**
+     * Scrive tutti i frame in coda e svuota il buffer una sola volta.
+     * Se nel frattempo sono arrivati altri frame, il task continua invece di terminare.
+     */
+    private void drain() {
+        try {
+            do {
+                ByteBuffer frame;
+                while ((frame = outbound.poll()) != null) {
+                    output.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+                }
+                output.flush();
+                writerScheduled.set(false);
+                notifyDrained();
+            } while (!outbound.isEmpty() && writerScheduled.compareAndSet(false, true));
+        } catch (IOException e) {
+            if (!closed.get()) {
+                logger.debug("Errore durante la scrittura sul socket", e);
+            }
+            writerScheduled.set(false);
+            closeQuietly(); // Il thread di lettura rileva la chiusura e chiude la connessione
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        outbound.clear();
+        socket.close();
+    }
+
+    /**
+     * Notifica l'eventuale fine della congestione della coda di uscita.
+     */
+    private void notifyDrained() {
+        Runnable listener = drainListener;
+        if (outbound.clearCongestion() && listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Chiude il trasporto ignorando eventuali errori.
+     */
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            logger.debug("Errore durante la chiusura del socket", e);
+        }
+    }
+}
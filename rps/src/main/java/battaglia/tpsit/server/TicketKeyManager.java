@@ -0,0 +1,171 @@
+package battaglia.tpsit.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Emette e verifica i ticket di ripresa della sessione.
+ * <p>
+ * Un ticket contiene nome utente, segreto di sessione e scadenza, cifrati con AES-GCM
+ * sotto una chiave nota solo al server: il server non deve quindi conservare alcuno stato
+ * per i client disconnessi. Formato del ticket (poi codificato in Base64):
+ * <pre>
+ * byte     generazione della chiave del ticket
+ * byte[12] nonce casuale
+ * byte[]   testo cifrato e tag GCM di: int64 scadenza, uint16 + username, uint16 + segreto
+ * </pre>
+ * Le chiavi ruotano a ogni intervallo pari alla durata dei ticket; la chiave precedente resta
+ * valida per un ulteriore intervallo, così un ticket emesso poco prima della rotazione può
+ * ancora essere usato fino alla sua scadenza. La rotazione avviene in modo pigro alla prima
+ * emissione o verifica successiva allo scadere dell'intervallo.
+ */
+class TicketKeyManager {
+    private static final Logger logger = LoggerFactory.getLogger(TicketKeyManager.class);
+    private static final String KEY_ALGORITHM = "AES";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEY_SIZE = 256;
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_BITS = 128;
+
+    private final long lifetimeMillis;
+    private final SecureRandom random;
+    private final KeyGenerator keyGenerator;
+    private SecretKey currentKey;
+    private SecretKey previousKey;
+    private int generation;
+    private long nextRotation;
+
+    /**
+     * Costruttore del gestore dei ticket.
+     *
+     * @param lifetimeSeconds Durata dei ticket e intervallo di rotazione delle chiavi, in secondi
+     * @throws GeneralSecurityException Se non è possibile generare le chiavi AES
+     */
+    TicketKeyManager(long lifetimeSeconds) throws GeneralSecurityException {
+        this.lifetimeMillis = lifetimeSeconds * 1000L;
+        this.random = new SecureRandom();
+        this.keyGenerator = KeyGenerator.getInstance(KEY_ALGORITHM);
+        this.keyGenerator.init(KEY_SIZE, random);
+        this.currentKey = keyGenerator.generateKey();
+        this.nextRotation = System.currentTimeMillis() + lifetimeMillis;
+    }
+
+    /**
+     * Emette un nuovo ticket.
+     *
+     * @param username Il nome utente del client
+     * @param secret   Il segreto di sessione da cui derivare la chiave alla ripresa
+     * @return Il ticket cifrato in Base64
+     * @throws GeneralSecurityException Se si verifica un errore nella cifratura
+     */
+    String issue(String username, byte[] secret) throws GeneralSecurityException {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer plain = ByteBuffer.allocate(8 + 2 + name.length + 2 + secret.length);
+        plain.putLong(System.currentTimeMillis() + lifetimeMillis);
+        plain.putShort((short) name.length).put(name);
+        plain.putShort((short) secret.length).put(secret);
+
+        byte[] nonce = new byte[NONCE_SIZE];
+        random.nextBytes(nonce);
+
+        SecretKey key;
+        int keyGeneration;
+        synchronized (this) {
+            rotateIfNeeded();
+            key = currentKey;
+            keyGeneration = generation;
+        }
+
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+        byte[] encrypted = cipher.doFinal(plain.array());
+
+        ByteBuffer ticket = ByteBuffer.allocate(1 + NONCE_SIZE + encrypted.length);
+        ticket.put((byte) keyGeneration).put(nonce).put(encrypted);
+        return Base64.getEncoder().encodeToString(ticket.array());
+    }
+
+    /**
+     * Verifica un ticket e ne estrae il contenuto.
+     *
+     * @param ticketBase64 Il ticket in Base64
+     * @param username     Il nome utente che presenta il ticket
+     * @return Il segreto di sessione, o {@code null} se il ticket non è valido, è scaduto
+     *         o appartiene a un altro utente
+     */
+    byte[] open(String ticketBase64, String username) {
+        try {
+            ByteBuffer ticket = ByteBuffer.wrap(Base64.getDecoder().decode(ticketBase64));
+            int keyGeneration = ticket.get() & 0xFF;
+            byte[] nonce = new byte[NONCE_SIZE];
+            ticket.get(nonce);
+
+            SecretKey key;
+            synchronized (this) {
+                rotateIfNeeded();
+                if (keyGeneration == (generation & 0xFF)) {
+                    key = currentKey;
+                } else if (previousKey != null && keyGeneration == ((generation - 1) & 0xFF)) {
+                    key = previousKey;
+                } else {
+                    return null; // Chiave ormai ritirata
+                }
+            }
+
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+            ByteBuffer plain = ByteBuffer.wrap(cipher.doFinal(ticket.array(), ticket.position(), ticket.remaining()));
+
+            long expiry = plain.getLong();
+            byte[] name = new byte[plain.getShort() & 0xFFFF];
+            plain.get(name);
+            byte[] secret = new byte[plain.getShort() & 0xFFFF];
+            plain.get(secret);
+
+            if (System.currentTimeMillis() > expiry || !new String(name, StandardCharsets.UTF_8).equals(username)) {
+                return null;
+            }
+            return secret;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            logger.debug("Ticket di ripresa non valido", e);
+            return null;
+        }
+    }
+
+    /**
+     * Restituisce la durata dei ticket emessi.
+     *
+     * @return La durata in secondi
+     */
+    long getLifetimeSeconds() {
+        return lifetimeMillis / 1000L;
+    }
+
+    /**
+     * Ruota le chiavi se l'intervallo corrente è scaduto.
+     * Se il server è rimasto inattivo per più di due intervalli anche la chiave precedente viene ritirata.
+     */
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now < nextRotation) {
+            return;
+        }
+
+        previousKey = now < nextRotation + lifetimeMillis ? currentKey : null;
+        currentKey = keyGenerator.generateKey();
+        generation++;
+        nextRotation = now + lifetimeMillis;
+        logger.info("Chiave dei ticket di ripresa ruotata (generazione {})", generation);
+    }
+}